@@ -7,8 +7,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
 import ru.practicum.StatsClient;
 import ru.practicum.StatsHitDto;
+import ru.practicum.StatsQueryDto;
 import ru.practicum.StatsResponseDto;
 import ru.practicum.category.model.Category;
 import ru.practicum.category.repository.CategoryRepository;
@@ -21,6 +23,7 @@ import ru.practicum.event.repository.LocationRepository;
 import ru.practicum.exception.ConflictException;
 import ru.practicum.exception.NotFoundException;
 import ru.practicum.exception.WrongDataException;
+import ru.practicum.recorder.HitRecorder;
 import ru.practicum.request.model.ParticipationRequest;
 import ru.practicum.request.repository.RequestRepository;
 import ru.practicum.user.model.User;
@@ -30,6 +33,8 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import static ru.practicum.util.ErrorMessages.CATEGORY_NOT_FOUND;
@@ -47,6 +52,7 @@ public class EventServiceImpl implements EventService {
     final CategoryRepository categoryRepository;
     final RequestRepository requestRepository;
     final StatsClient statsClient;
+    final HitRecorder hitRecorder;
     final LocationRepository locationRepository;
 
     @Override
@@ -154,8 +160,7 @@ public class EventServiceImpl implements EventService {
         }
         saveLocation(event);
         event = eventRepository.save(event);
-        EventFullDto eventFullDto = getEventFullDto(event);
-        return getViewsCounter(eventFullDto);
+        return getEventFullDtoWithViews(event, false);
     }
 
     @Override
@@ -177,8 +182,7 @@ public class EventServiceImpl implements EventService {
         if (!user.getId().equals(event.getInitiator().getId())) {
             throw new WrongDataException("Пользователь " + userId + " не является инициатором события " + eventId);
         }
-        EventFullDto eventFullDto = getEventFullDto(event);
-        return getViewsCounter(eventFullDto);
+        return getEventFullDtoWithViews(event, false);
     }
 
     @Override
@@ -193,14 +197,13 @@ public class EventServiceImpl implements EventService {
         event = updateEventWithUserRequest(event, request);
         saveLocation(event);
         eventRepository.save(event);
-        EventFullDto eventFullDto = getEventFullDto(event);
-        return getViewsCounter(eventFullDto);
+        return getEventFullDtoWithViews(event, false);
     }
 
     @Override
     public EventFullDto getEventDtoById(Long eventId, String uri, String ip) {
         log.info("Получение подробной информации об опубликованном событии по его идентификатору");
-        statsClient.saveHit(new StatsHitDto("ewm-service",
+        boolean recorded = recordView(new StatsHitDto("ewm-service",
                 uri,
                 ip,
                 LocalDateTime.now()));
@@ -208,8 +211,22 @@ public class EventServiceImpl implements EventService {
         if (!event.getState().equals(EventState.PUBLISHED) && !uri.toLowerCase().contains("admin")) {
             throw new NotFoundException("Такого события не существует");
         }
-        EventFullDto eventFullDto = getEventFullDto(event);
-        return getViewsCounter(eventFullDto);
+        return getEventFullDtoWithViews(event, recorded && uri.equals("/events/" + eventId));
+    }
+
+    // Просмотр события пишется синхронно, чтобы views в ответе уже его учитывал. Если сервер статистики
+    // заведомо не принял хит (нет соединения, 503, 429), хит уходит в фоновую отправку с повторами.
+    boolean recordView(StatsHitDto hit) {
+        try {
+            statsClient.saveHit(hit);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Просмотр не записан в статистику: {}", e.getMessage());
+            if (HitRecorder.isRetryable(e)) {
+                hitRecorder.record(hit);
+            }
+            return false;
+        }
     }
 
     @Override
@@ -266,13 +283,13 @@ public class EventServiceImpl implements EventService {
             }
             events = eventRepository.findEventList(text, categories, paid, startDate, endDate, EventState.PUBLISHED);
         }
-        statsClient.saveHit(new StatsHitDto("ewm-service",
+        hitRecorder.record(new StatsHitDto("ewm-service",
                 uri,
                 ip,
                 LocalDateTime.now()));
         if (!sortDate) {
             List<EventShortDto> shortEventDtos = createShortEventDtos(events);
-            shortEventDtos.sort(Comparator.comparing(EventShortDto::getViews));
+            shortEventDtos.sort(Comparator.comparing(EventShortDto::getViews, Comparator.nullsLast(Comparator.naturalOrder())));
             if (shortEventDtos.size() > from) {
                 if (shortEventDtos.size() > from + size) {
                     shortEventDtos = shortEventDtos.subList(from, from + size);
@@ -288,22 +305,13 @@ public class EventServiceImpl implements EventService {
     }
 
     List<EventShortDto> createShortEventDtos(List<Event> events) {
-        HashMap<Long, Integer> eventIdsWithViewsCounter = new HashMap<>();
-
-        LocalDateTime lowLocalDateTime = events.get(0).getCreatedOn();
-        List<String> uris = new ArrayList<>();
+        Map<Long, LocalDateTime> createdOnByEventId = new HashMap<>();
         for (Event event : events) {
-            uris.add("/events/" + event.getId().toString());
-            if (lowLocalDateTime.isAfter(event.getCreatedOn())) {
-                lowLocalDateTime = event.getCreatedOn();
-            }
-        }
-        List<StatsResponseDto> viewsCounter = getViewsCounter(uris, lowLocalDateTime.format(DateTimeFormatter.ofPattern(JSON_FORMAT_PATTERN_FOR_TIME)));
-        for (StatsResponseDto statsDto : viewsCounter) {
-            String[] split = statsDto.getUri().split("/");
-            eventIdsWithViewsCounter.put(Long.parseLong(split[2]), Math.toIntExact(statsDto.getHits()));
+            createdOnByEventId.put(event.getId(), event.getCreatedOn());
         }
-        List<ParticipationRequest> requests = requestRepository.findByEventIds(new ArrayList<>(eventIdsWithViewsCounter.keySet()));
+        CompletableFuture<Map<Long, Integer>> views = getViewsCounter(createdOnByEventId).toFuture();
+        List<ParticipationRequest> requests = requestRepository.findByEventIds(new ArrayList<>(createdOnByEventId.keySet()));
+        Map<Long, Integer> eventIdsWithViewsCounter = await(views);
         return events.stream()
                 .map(EventDtoMapper::mapEventToShortDto)
                 .peek(dto -> dto.setConfirmedRequests(
@@ -315,40 +323,67 @@ public class EventServiceImpl implements EventService {
                 .collect(Collectors.toList());
     }
 
-    EventFullDto getViewsCounter(EventFullDto eventFullDto) {
-        Integer views = statsClient.getStats(eventFullDto.getCreatedOn(),
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern(JSON_FORMAT_PATTERN_FOR_TIME)),
-                List.of("/events/" + eventFullDto.getId()), true).size();
-        eventFullDto.setViews(views);
+    // Просмотры запрашиваются у сервера статистики, пока идет подсчет подтвержденных заявок.
+    // Если сервер статистики не ответил вовремя и прежнего ответа нет, views не заполняется (null, а не 0).
+    // После записи хита самого запроса (viewed) просмотры загружаются в обход последних известных,
+    // чтобы ответ учитывал этот хит.
+    EventFullDto getEventFullDtoWithViews(Event event, boolean viewed) {
+        String uri = "/events/" + event.getId();
+        List<StatsQueryDto> queries = List.of(new StatsQueryDto(uri, event.getCreatedOn(), LocalDateTime.now(), true));
+        CompletableFuture<Integer> views = (viewed ? statsClient.getFreshStatsAsync(queries) : statsClient.getRecentStatsAsync(queries))
+                .flatMap(recent -> recent.isMissing(uri) ? Mono.empty() : Mono.just(recent.getStats().size()))
+                .toFuture();
+        EventFullDto eventFullDto = getEventFullDto(event);
+        eventFullDto.setViews(await(views));
         return eventFullDto;
     }
 
-    List<StatsResponseDto> getViewsCounter(List<String> uris, String CreatedOn) {
-        List<StatsResponseDto> viewsForUris = statsClient.getStats(CreatedOn,
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern(JSON_FORMAT_PATTERN_FOR_TIME)),
-                uris, true);
-        return viewsForUris;
+    // Просмотры каждого события считаются с его собственной даты создания, все события - одним пакетным запросом.
+    // Недоступный или медленный сервер статистики не задерживает ответ: отдаются последние известные просмотры,
+    // а события без известных просмотров в карту не попадают.
+    Mono<Map<Long, Integer>> getViewsCounter(Map<Long, LocalDateTime> createdOnByEventId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<StatsQueryDto> queries = createdOnByEventId.entrySet().stream()
+                .map(entry -> new StatsQueryDto("/events/" + entry.getKey(), entry.getValue(), now, true))
+                .collect(Collectors.toList());
+        Map<Long, Integer> eventIdsWithViewsCounter = new HashMap<>();
+        if (queries.isEmpty()) {
+            return Mono.just(eventIdsWithViewsCounter);
+        }
+        return statsClient.getRecentStatsAsync(queries).map(recent -> {
+            createdOnByEventId.keySet().stream()
+                    .filter(eventId -> !recent.isMissing("/events/" + eventId))
+                    .forEach(eventId -> eventIdsWithViewsCounter.put(eventId, 0));
+            for (StatsResponseDto statsDto : recent.getStats()) {
+                String[] split = statsDto.getUri().split("/");
+                eventIdsWithViewsCounter.merge(Long.parseLong(split[2]), Math.toIntExact(statsDto.getHits()), Integer::sum);
+            }
+            return eventIdsWithViewsCounter;
+        });
+    }
+
+    // Ошибка сервера статистики пробрасывается как при блокирующем вызове, без обертки CompletionException.
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     List<EventFullDto> getViewCounters(List<EventFullDto> dtos) {
         if (dtos.size() > 0) {
-            HashMap<Long, Integer> eventIdsWithViewsCounter = new HashMap<>();
-            LocalDateTime lowLocalDateTime = LocalDateTime.parse(dtos.get(0).getCreatedOn().replace(" ", "T"));
-            List<String> uris = new ArrayList<>();
+            Map<Long, LocalDateTime> createdOnByEventId = new HashMap<>();
             for (EventFullDto dto : dtos) {
-                eventIdsWithViewsCounter.put(dto.getId(), 0);
-                uris.add("/events/" + dto.getId().toString());
-                if (lowLocalDateTime.isAfter(LocalDateTime.parse(dto.getCreatedOn().replace(" ", "T")))) {
-                    lowLocalDateTime = LocalDateTime.parse(dto.getCreatedOn().replace(" ", "T"));
-                }
-            }
-            List<StatsResponseDto> viewsCounter = getViewsCounter(uris, lowLocalDateTime.format(DateTimeFormatter.ofPattern(JSON_FORMAT_PATTERN_FOR_TIME)));
-            for (StatsResponseDto statsDto : viewsCounter) {
-                String[] split = statsDto.getUri().split("/");
-                eventIdsWithViewsCounter.put(Long.parseLong(split[2]), Math.toIntExact(statsDto.getHits()));
+                createdOnByEventId.put(dto.getId(), LocalDateTime.parse(dto.getCreatedOn().replace(" ", "T")));
             }
-            ArrayList<Long> longs = new ArrayList<>(eventIdsWithViewsCounter.keySet());
+            CompletableFuture<Map<Long, Integer>> views = getViewsCounter(createdOnByEventId).toFuture();
+            ArrayList<Long> longs = new ArrayList<>(createdOnByEventId.keySet());
             List<ParticipationRequest> requests = requestRepository.findByEventIdsAndStatus(longs, "CONFIRMED");
+            Map<Long, Integer> eventIdsWithViewsCounter = await(views);
             return dtos.stream()
                     .peek(dto -> dto.setConfirmedRequests(
                             requests.stream()
@@ -0,0 +1,74 @@
+package ru.practicum.benchmark;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.StatsHitDto;
+import ru.practicum.model.StatsHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Детерминированные хиты, похожие на боевые: время растет равномерно по периоду, популярность uri убывает
+ * степенным образом (несколько горячих событий и длинный хвост), ip выбираются из ограниченного пула.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitGenerator {
+
+    public static final String APP = "ewm-main-service";
+    public static final LocalDateTime START = LocalDateTime.of(2022, 9, 1, 0, 0);
+    public static final Duration PERIOD = Duration.ofDays(30);
+    public static final int URIS = 10_000;
+    public static final int IPS = 100_000;
+
+    final SplittableRandom random = new SplittableRandom(42);
+    final long total;
+    final long stepNanos;
+    long generated;
+
+    public HitGenerator(long total) {
+        this.total = total;
+        this.stepNanos = Math.max(1, PERIOD.toNanos() / total);
+    }
+
+    public boolean hasNext() {
+        return generated < total;
+    }
+
+    public List<StatsHit> nextBlock(int size) {
+        List<StatsHit> hits = new ArrayList<>(size);
+        while (hits.size() < size && hasNext()) {
+            hits.add(new StatsHit(null, APP, uri(), ip(), START.plusNanos(stepNanos * generated)));
+            generated++;
+        }
+        return hits;
+    }
+
+    public StatsHitDto nextDto(LocalDateTime timestamp) {
+        return new StatsHitDto(APP, uri(), ip(), timestamp);
+    }
+
+    public static List<String> hotUris(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(HitGenerator::uri)
+                .collect(Collectors.toList());
+    }
+
+    static String uri(int index) {
+        return "/events/" + index;
+    }
+
+    String uri() {
+        return uri((int) (Math.pow(random.nextDouble(), 3) * URIS));
+    }
+
+    String ip() {
+        int ip = random.nextInt(IPS);
+        return "10." + (ip >>> 16) + "." + ((ip >>> 8) & 0xff) + "." + (ip & 0xff);
+    }
+}
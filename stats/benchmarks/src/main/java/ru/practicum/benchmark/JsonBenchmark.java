@@ -0,0 +1,90 @@
+package ru.practicum.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.practicum.StatsBinaryCodec;
+import ru.practicum.StatsHitDto;
+import ru.practicum.StatsResponseDto;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Сериализация тел /hit и /stats: JSON тем же ObjectMapper, что строит Spring Boot, и двоичный формат для сравнения.
+ * rows - число строк ответа /stats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonBenchmark {
+
+    @Param({"10", "1000"})
+    int rows;
+
+    ObjectWriter hitWriter;
+    ObjectReader hitReader;
+    ObjectWriter statsWriter;
+    ObjectReader statsReader;
+    StatsHitDto hit;
+    byte[] hitJson;
+    List<StatsResponseDto> stats;
+    byte[] statsJson;
+    byte[] statsBinary;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        hitWriter = objectMapper.writerFor(StatsHitDto.class);
+        hitReader = objectMapper.readerFor(StatsHitDto.class);
+        statsWriter = objectMapper.writerFor(new TypeReference<List<StatsResponseDto>>() {
+        });
+        statsReader = objectMapper.readerFor(new TypeReference<List<StatsResponseDto>>() {
+        });
+        hit = new HitGenerator(1).nextDto(HitGenerator.START);
+        hitJson = hitWriter.writeValueAsBytes(hit);
+        stats = HitGenerator.hotUris(rows).stream()
+                .map(uri -> new StatsResponseDto(HitGenerator.APP, uri, (long) uri.hashCode() & 0xffff))
+                .collect(Collectors.toList());
+        statsJson = statsWriter.writeValueAsBytes(stats);
+        statsBinary = StatsBinaryCodec.encodeStats(stats);
+    }
+
+    @Benchmark
+    public byte[] writeHit() throws IOException {
+        return hitWriter.writeValueAsBytes(hit);
+    }
+
+    @Benchmark
+    public StatsHitDto readHit() throws IOException {
+        return hitReader.readValue(hitJson);
+    }
+
+    @Benchmark
+    public byte[] writeStats() throws IOException {
+        return statsWriter.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public List<StatsResponseDto> readStats() throws IOException {
+        return statsReader.readValue(statsJson);
+    }
+
+    @Benchmark
+    public byte[] writeStatsBinary() {
+        return StatsBinaryCodec.encodeStats(stats);
+    }
+
+    @Benchmark
+    public List<StatsResponseDto> readStatsBinary() {
+        return StatsBinaryCodec.decodeStats(statsBinary);
+    }
+}
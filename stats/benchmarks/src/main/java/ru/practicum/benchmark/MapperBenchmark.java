@@ -0,0 +1,38 @@
+package ru.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.StatsHitDto;
+import ru.practicum.StatsResponseDto;
+import ru.practicum.mapper.Mapper;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsResponse;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapperBenchmark {
+
+    StatsHitDto hitDto;
+    StatsResponse response;
+
+    @Setup
+    public void setUp() {
+        hitDto = new HitGenerator(1).nextDto(HitGenerator.START);
+        response = new StatsResponse(HitGenerator.APP, "/events/1", 12345L);
+    }
+
+    @Benchmark
+    public StatsHit toHit() {
+        return Mapper.toHit(hitDto);
+    }
+
+    @Benchmark
+    public StatsResponseDto toStatsDto() {
+        return Mapper.toStatsDto(response);
+    }
+}
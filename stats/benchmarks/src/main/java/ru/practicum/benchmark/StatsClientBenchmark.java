@@ -0,0 +1,74 @@
+package ru.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.StatsClient;
+import ru.practicum.StatsHitDto;
+import ru.practicum.StatsResponseDto;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static util.Constants.JSON_FORMAT_PATTERN_FOR_TIME;
+
+/**
+ * Полный путь StatsClient - HTTP - сервер (хранилище segment) в одном процессе, в JSON и двоичном формате.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsClientBenchmark {
+
+    @Param({"100000"})
+    long hits;
+
+    @Param({"false", "true"})
+    boolean binary;
+
+    StatsServerFixture fixture;
+    StatsClient statsClient;
+    HitGenerator generator;
+    List<String> uris;
+    String start;
+    String end;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new StatsServerFixture("segment", true);
+        fixture.load(hits);
+        statsClient = new StatsClient(fixture.getUrl(), binary);
+        generator = new HitGenerator(Long.MAX_VALUE);
+        uris = HitGenerator.hotUris(10);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(JSON_FORMAT_PATTERN_FOR_TIME);
+        start = HitGenerator.START.plusDays(10).format(formatter);
+        end = HitGenerator.START.plusDays(11).format(formatter);
+        // первый ответ сообщает клиенту о поддержке двоичного формата
+        statsClient.saveHit(nextHit());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public StatsHitDto saveHit() {
+        return statsClient.saveHit(nextHit());
+    }
+
+    @Benchmark
+    public List<StatsResponseDto> getStats() {
+        return statsClient.getStats(start, end, uris, false);
+    }
+
+    StatsHitDto nextHit() {
+        synchronized (generator) {
+            return generator.nextDto(LocalDateTime.now());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ru.practicum.benchmark;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import ru.practicum.StatsServer;
+import ru.practicum.model.StatsHit;
+import ru.practicum.repository.StatsRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сервер статистики в том же процессе. storage=segment работает во временном каталоге без БД;
+ * storage=jdbc требует -Dstats.benchmark.jdbc-url=... и пересоздает схему в этой базе (spring.sql.init.mode=always).
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class StatsServerFixture implements AutoCloseable {
+
+    static final String JDBC_URL_PROPERTY = "stats.benchmark.jdbc-url";
+    static final int LOAD_BLOCK_SIZE = 100_000;
+
+    final ConfigurableApplicationContext context;
+    final Path directory;
+
+    public StatsServerFixture(String storage, boolean web) throws IOException {
+        // Аргументы командной строки, а не properties(): они должны перекрывать application.properties сервера.
+        List<String> properties = new ArrayList<>();
+        properties.add("--stats.storage=" + storage);
+        properties.add("--server.port=0");
+        properties.add("--logging.level.root=WARN");
+        // StatsClient из модуля client тоже в пакете ru.practicum и попадает в сканирование компонентов сервера.
+        properties.add("--stats-server.url=http://localhost");
+        if ("segment".equals(storage)) {
+            directory = Files.createTempDirectory("stats-benchmark");
+            properties.add("--stats.segment.directory=" + directory);
+            properties.add("--spring.autoconfigure.exclude="
+                    + "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration");
+        } else if ("jdbc".equals(storage)) {
+            directory = null;
+            String url = System.getProperty(JDBC_URL_PROPERTY);
+            if (url == null) {
+                throw new IllegalStateException("Для storage=jdbc укажите -D" + JDBC_URL_PROPERTY);
+            }
+            properties.add("--spring.datasource.url=" + url);
+        } else {
+            throw new IllegalArgumentException("Неизвестное хранилище: " + storage);
+        }
+        context = new SpringApplicationBuilder(StatsServer.class)
+                .web(web ? WebApplicationType.SERVLET : WebApplicationType.NONE)
+                .run(properties.toArray(new String[0]));
+    }
+
+    // Данные грузятся путем массовой загрузки архива, чтобы подготовка 100M хитов не занимала часы.
+    public void load(long hits) {
+        StatsRepository repository = context.getBean(StatsRepository.class);
+        HitGenerator generator = new HitGenerator(hits);
+        while (generator.hasNext()) {
+            List<StatsHit> block = generator.nextBlock(LOAD_BLOCK_SIZE);
+            repository.importAll(block);
+        }
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        if (directory != null) {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+}
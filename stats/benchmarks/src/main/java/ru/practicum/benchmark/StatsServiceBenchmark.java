@@ -0,0 +1,78 @@
+package ru.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.StatsHitDto;
+import ru.practicum.StatsResponseDto;
+import ru.practicum.service.StatsServiceImpl;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись и чтение через StatsServiceImpl (без HTTP и кэша ответов) на предварительно загруженных hits хитах.
+ * Объемы 10M-100M задаются через -p hits=..., хранилища сравниваются через -p storage=segment,jdbc.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StatsServiceBenchmark {
+
+    @Param({"1000000"})
+    long hits;
+
+    @Param({"segment"})
+    String storage;
+
+    StatsServerFixture fixture;
+    StatsServiceImpl statsService;
+    HitGenerator generator;
+    List<String> uris;
+    LocalDateTime dayStart;
+    LocalDateTime dayEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new StatsServerFixture(storage, false);
+        fixture.load(hits);
+        statsService = fixture.getBean(StatsServiceImpl.class);
+        generator = new HitGenerator(Long.MAX_VALUE);
+        uris = HitGenerator.hotUris(10);
+        dayStart = HitGenerator.START.plusDays(10);
+        dayEnd = dayStart.plusDays(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    // Новые хиты пишутся за пределами загруженного периода и не меняют результаты запросов ниже.
+    @Benchmark
+    public StatsHitDto save() {
+        StatsHitDto hit;
+        synchronized (generator) {
+            hit = generator.nextDto(HitGenerator.START.plus(HitGenerator.PERIOD).plusDays(1));
+        }
+        return statsService.save(hit);
+    }
+
+    @Benchmark
+    public List<StatsResponseDto> getStats() {
+        return statsService.getStats(dayStart, dayEnd, uris, false);
+    }
+
+    @Benchmark
+    public List<StatsResponseDto> getUniqueStats() {
+        return statsService.getStats(dayStart, dayEnd, uris, true);
+    }
+
+    @Benchmark
+    public List<StatsResponseDto> getAllStats() {
+        return statsService.getStats(HitGenerator.START, HitGenerator.START.plus(HitGenerator.PERIOD), null, false);
+    }
+}
@@ -2,44 +2,323 @@ package ru.practicum;
 
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import ru.practicum.fallback.LastKnownStats;
+import ru.practicum.fallback.RecentStats;
+import ru.practicum.fallback.StatsCallGuard;
+import ru.practicum.fanout.FanOutProperties;
+import ru.practicum.nearcache.StatsNearCache;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class StatsClient {
+    static final MediaType BINARY = MediaType.parseMediaType(StatsBinaryCodec.MEDIA_TYPE_VALUE);
+    static final String ACCEPT_POST = "Accept-Post";
+    static final String URIS_PARAM = "&uris=";
+    static final String WILDCARD = "*";
+    static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     final WebClient webClient;
+    final boolean binaryEnabled;
+    final StatsNearCache nearCache;
+    final StatsCallGuard guard;
+    final LastKnownStats lastKnownStats;
+    final FanOutProperties fanOut;
+    // Сервер объявляет поддержку двоичных тел запросов заголовком Accept-Post; до первого ответа хиты уходят в JSON.
+    volatile boolean binarySupported;
+
+    public StatsClient(String connectionURL, boolean binaryEnabled) {
+        this(connectionURL, binaryEnabled, StatsNearCache.disabled(), StatsCallGuard.disabled(), LastKnownStats.disabled(),
+                new FanOutProperties());
+    }
 
-    public StatsClient(@Value("${stats-server.url}") String connectionURL) {
-        webClient = WebClient.create(connectionURL);
+    @Autowired
+    public StatsClient(@Value("${stats-server.url}") String connectionURL,
+                       @Value("${stats-server.binary:true}") boolean binaryEnabled,
+                       StatsNearCache nearCache,
+                       StatsCallGuard guard,
+                       LastKnownStats lastKnownStats,
+                       FanOutProperties fanOut) {
+        // Цикл событий и DNS-резолвер создаются здесь, а не на первом запросе, который иначе не укладывается в callTimeout.
+        HttpClient httpClient = HttpClient.create();
+        httpClient.warmup().block();
+        webClient = WebClient.builder()
+                .baseUrl(connectionURL)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+        this.binaryEnabled = binaryEnabled;
+        this.nearCache = nearCache;
+        this.guard = guard;
+        this.lastKnownStats = lastKnownStats;
+        this.fanOut = fanOut;
     }
 
     public StatsHitDto saveHit(StatsHitDto statsHitDto) {
-        return webClient.post()
+        return postHit(statsHitDto, binarySupported).block();
+    }
+
+    public Mono<Void> saveHitAsync(StatsHitDto statsHitDto) {
+        return Mono.defer(() -> postHit(statsHitDto, binarySupported)).then();
+    }
+
+    Mono<StatsHitDto> postHit(StatsHitDto statsHitDto, boolean binary) {
+        WebClient.RequestBodySpec request = webClient.post()
                 .uri("/hit")
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .body(Mono.just(statsHitDto), StatsHitDto.class)
-                .retrieve()
-                .bodyToMono(StatsHitDto.class)
-                .block();
+                .accept(acceptedTypes());
+        WebClient.RequestHeadersSpec<?> withBody = binary
+                ? request.contentType(BINARY).bodyValue(StatsBinaryCodec.encodeHits(List.of(statsHitDto)))
+                : request.contentType(MediaType.APPLICATION_JSON).bodyValue(statsHitDto);
+        Mono<StatsHitDto> saved = guard.timeout(withBody.exchangeToMono(this::readHit));
+        if (!binary) {
+            return saved;
+        }
+        return saved.onErrorResume(WebClientResponseException.UnsupportedMediaType.class, e -> {
+            binarySupported = false;
+            return postHit(statsHitDto, false);
+        });
+    }
+
+    // Пачка хитов в POST /hits; подписка откладывается, чтобы повтор выбирал формат заново.
+    public Mono<Integer> saveHitsAsync(List<StatsHitDto> hits) {
+        return Mono.defer(() -> postHits(hits, binarySupported));
+    }
+
+    Mono<Integer> postHits(List<StatsHitDto> hits, boolean binary) {
+        WebClient.RequestBodySpec request = webClient.post()
+                .uri("/hits")
+                .accept(MediaType.APPLICATION_JSON);
+        WebClient.RequestHeadersSpec<?> withBody = binary
+                ? request.contentType(BINARY).bodyValue(StatsBinaryCodec.encodeHits(hits))
+                : request.contentType(MediaType.APPLICATION_JSON).bodyValue(hits);
+        Mono<Integer> saved = guard.timeout(withBody.exchangeToMono(response -> {
+            if (response.statusCode().isError()) {
+                return response.createException().flatMap(Mono::error);
+            }
+            rememberFormats(response);
+            return response.bodyToMono(Integer.class);
+        }));
+        if (!binary) {
+            return saved;
+        }
+        return saved.onErrorResume(WebClientResponseException.UnsupportedMediaType.class, e -> {
+            binarySupported = false;
+            return postHits(hits, false);
+        });
     }
 
     public List<StatsResponseDto> getStats(String start, String end, List<String> uris, Boolean unique) {
-        return List.of(webClient.get()
+        return getStatsAsync(start, end, uris, unique).block();
+    }
+
+    // Ответ берется из ближнего кэша; отмена подписки отменяет только копию общего future.
+    public Mono<List<StatsResponseDto>> getStatsAsync(String start, String end, List<String> uris, Boolean unique) {
+        return Mono.defer(() -> Mono.fromFuture(nearCache.get(start, end, uris, unique,
+                (from, to) -> fetchStats(from, to, uris, unique).toFuture()).copy()));
+    }
+
+    /**
+     * Длинный список uris делится на части по chunkSize, части запрашиваются параллельно (не больше concurrency
+     * одновременно), ответы объединяются. Часть, которая не помещается в maxQueryLength, уходит в POST /stats/batch
+     * по запросу на uri; части с шаблоном '*' всегда идут в GET, пакетный запрос шаблонов не раскрывает.
+     */
+    Mono<List<StatsResponseDto>> fetchStats(String start, String end, List<String> uris, Boolean unique) {
+        if (uris == null || (uris.size() <= fanOut.getChunkSize() && queryLength(uris) <= fanOut.getMaxQueryLength())) {
+            return fetchStatsChunk(start, end, uris, unique);
+        }
+        return merge(Flux.fromIterable(chunks(uris.stream().distinct().collect(Collectors.toList())))
+                .flatMap(chunk -> fetchStatsChunk(start, end, chunk, unique), fanOut.getConcurrency()));
+    }
+
+    Mono<List<StatsResponseDto>> fetchStatsChunk(String start, String end, List<String> uris, Boolean unique) {
+        if (uris != null && queryLength(uris) > fanOut.getMaxQueryLength()
+                && uris.stream().noneMatch(uri -> uri.contains(WILDCARD))) {
+            try {
+                LocalDateTime from = LocalDateTime.parse(start, FORMATTER);
+                LocalDateTime to = LocalDateTime.parse(end, FORMATTER);
+                return postBatchStats(uris.stream()
+                        .distinct()
+                        .map(uri -> new StatsQueryDto(uri, from, to, Boolean.TRUE.equals(unique)))
+                        .collect(Collectors.toList()));
+            } catch (DateTimeParseException e) {
+                // даты в другом формате разбирает только сервер
+            }
+        }
+        return guard.protect(webClient.get()
                 .uri(uriWithParams -> uriWithParams.path("/stats")
                         .queryParam("start", start)
                         .queryParam("end", end)
                         .queryParam("uris", uris)
                         .queryParam("unique", unique)
                         .build())
+                .accept(acceptedTypes())
+                .exchangeToMono(this::readStats));
+    }
+
+    public List<StatsResponseDto> getTopStats(String start, String end, Integer k, String app) {
+        return getTopStatsAsync(start, end, k, app).block();
+    }
+
+    public Mono<List<StatsResponseDto>> getTopStatsAsync(String start, String end, Integer k, String app) {
+        return guard.protect(webClient.get()
+                .uri(uriWithParams -> uriWithParams.path("/stats/top")
+                        .queryParam("start", start)
+                        .queryParam("end", end)
+                        .queryParam("k", k)
+                        .queryParamIfPresent("app", Optional.ofNullable(app))
+                        .build())
+                .accept(acceptedTypes())
+                .exchangeToMono(this::readStats));
+    }
+
+    public List<StatsResponseDto> getBatchStats(List<StatsQueryDto> queries) {
+        return getBatchStatsAsync(queries).block();
+    }
+
+    // Большой пакет делится на части по chunkSize запросов так же, как список uris в getStats.
+    public Mono<List<StatsResponseDto>> getBatchStatsAsync(List<StatsQueryDto> queries) {
+        if (queries.size() <= fanOut.getChunkSize()) {
+            return postBatchStats(queries);
+        }
+        return merge(Flux.fromIterable(chunks(queries))
+                .flatMap(this::postBatchStats, fanOut.getConcurrency()));
+    }
+
+    Mono<List<StatsResponseDto>> postBatchStats(List<StatsQueryDto> queries) {
+        return guard.protect(webClient.post()
+                .uri("/stats/batch")
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .bodyValue(queries)
+                .accept(acceptedTypes())
+                .exchangeToMono(this::readStats));
+    }
+
+    // Статистика с start до текущего момента: последний известный ответ отдается сразу и обновляется в фоне,
+    // uri без известного ответа перечислены в RecentStats.missing.
+    public Mono<RecentStats> getRecentStatsAsync(List<StatsQueryDto> queries) {
+        return lastKnownStats.get(queries, this::getBatchStatsAsync);
+    }
+
+    // То же, но с загрузкой в обход известных ответов: для чтения сразу после записи хита.
+    public Mono<RecentStats> getFreshStatsAsync(List<StatsQueryDto> queries) {
+        return lastKnownStats.load(queries, this::getBatchStatsAsync);
+    }
+
+    public void streamStats(String start, String end, List<String> uris, Boolean unique,
+                            Consumer<StatsResponseDto> consumer) {
+        streamStatsAsync(start, end, uris, unique)
+                .doOnNext(consumer)
+                .blockLast();
+    }
+
+    public Flux<StatsResponseDto> streamStatsAsync(String start, String end, List<String> uris, Boolean unique) {
+        return webClient.get()
+                .uri(uriWithParams -> uriWithParams.path("/stats")
+                        .queryParam("start", start)
+                        .queryParam("end", end)
+                        .queryParam("uris", uris)
+                        .queryParam("unique", unique)
+                        .build())
+                .accept(MediaType.APPLICATION_NDJSON)
                 .retrieve()
-                .bodyToMono(StatsResponseDto[].class)
-                .block());
+                .bodyToFlux(StatsResponseDto.class);
+    }
+
+    <T> List<List<T>> chunks(List<T> items) {
+        int size = Math.max(1, fanOut.getChunkSize());
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += size) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + size)));
+        }
+        return chunks;
+    }
+
+    // Части не пересекаются, кроме шаблонов '*': повторная строка (app, uri) отбрасывается.
+    static Mono<List<StatsResponseDto>> merge(Flux<List<StatsResponseDto>> parts) {
+        return parts.collectList().map(lists -> {
+            Map<List<String>, StatsResponseDto> merged = new LinkedHashMap<>();
+            for (List<StatsResponseDto> stats : lists) {
+                for (StatsResponseDto dto : stats) {
+                    merged.putIfAbsent(Arrays.asList(dto.getApp(), dto.getUri()), dto);
+                }
+            }
+            List<StatsResponseDto> result = new ArrayList<>(merged.values());
+            result.sort(Comparator.comparing(StatsResponseDto::getHits, Comparator.nullsLast(Comparator.reverseOrder())));
+            return result;
+        });
+    }
+
+    static int queryLength(List<String> uris) {
+        return uris.stream()
+                .mapToInt(uri -> URIS_PARAM.length() + URLEncoder.encode(uri, StandardCharsets.UTF_8).length())
+                .sum();
+    }
+
+    MediaType[] acceptedTypes() {
+        return binaryEnabled
+                ? new MediaType[]{BINARY, MediaType.APPLICATION_JSON}
+                : new MediaType[]{MediaType.APPLICATION_JSON};
+    }
+
+    Mono<List<StatsResponseDto>> readStats(ClientResponse response) {
+        if (response.statusCode().isError()) {
+            return response.createException().flatMap(Mono::error);
+        }
+        rememberFormats(response);
+        if (isBinary(response)) {
+            return response.bodyToMono(byte[].class)
+                    .map(StatsBinaryCodec::decodeStats)
+                    .defaultIfEmpty(List.of());
+        }
+        return response.bodyToMono(StatsResponseDto[].class)
+                .map(List::of);
+    }
+
+    Mono<StatsHitDto> readHit(ClientResponse response) {
+        if (response.statusCode().isError()) {
+            return response.createException().flatMap(Mono::error);
+        }
+        rememberFormats(response);
+        if (isBinary(response)) {
+            return response.bodyToMono(byte[].class)
+                    .map(bytes -> StatsBinaryCodec.decodeHits(bytes).get(0));
+        }
+        return response.bodyToMono(StatsHitDto.class);
+    }
+
+    void rememberFormats(ClientResponse response) {
+        String formats = response.headers().asHttpHeaders().getFirst(ACCEPT_POST);
+        binarySupported = binaryEnabled && formats != null && formats.contains(StatsBinaryCodec.MEDIA_TYPE_VALUE);
+    }
+
+    static boolean isBinary(ClientResponse response) {
+        return response.headers().contentType()
+                .map(BINARY::isCompatibleWith)
+                .orElse(false);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package ru.practicum.fallback;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats-server.fallback")
+public class FallbackProperties {
+
+    Duration callTimeout = Duration.ofSeconds(2);
+
+    int failureThreshold = 5;
+
+    Duration openDuration = Duration.ofSeconds(10);
+
+    boolean enabled = true;
+
+    Duration refreshAfter = Duration.ofSeconds(1);
+
+    int maxEntries = 100000;
+}
@@ -0,0 +1,204 @@
+package ru.practicum.fallback;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.AccessLevel;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import ru.practicum.StatsQueryDto;
+import ru.practicum.StatsResponseDto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Последние известные ответы на запросы "с start до текущего момента" по каждому uri (stale-while-revalidate):
+ * известный ответ отдается сразу, а если он старше refreshAfter, в фоне идет одно общее обновление.
+ * Неизвестный uri ждет первую загрузку (ее ограничивает callTimeout вызова) и попадает в RecentStats.missing,
+ * только если она не удалась. Неудачное обновление оставляет прежний ответ.
+ * Метрики: stats.client.fallback.requests{result=fresh|stale|missing}, stats.client.fallback.size.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class LastKnownStats {
+
+    final FallbackProperties properties;
+    final Map<Key, Entry> entries;
+    final Map<Key, CompletableFuture<Void>> refreshing = new HashMap<>();
+    final Counter fresh;
+    final Counter stale;
+    final Counter missing;
+
+    public LastKnownStats(FallbackProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > properties.getMaxEntries();
+            }
+        };
+        this.fresh = meterRegistry.counter("stats.client.fallback.requests", "result", "fresh");
+        this.stale = meterRegistry.counter("stats.client.fallback.requests", "result", "stale");
+        this.missing = meterRegistry.counter("stats.client.fallback.requests", "result", "missing");
+        meterRegistry.gauge("stats.client.fallback.size", entries, Map::size);
+    }
+
+    public static LastKnownStats disabled() {
+        FallbackProperties properties = new FallbackProperties();
+        properties.setEnabled(false);
+        return new LastKnownStats(properties, new SimpleMeterRegistry());
+    }
+
+    // end запросов не входит в ключ: ответ считается верным до текущего момента с точностью refreshAfter.
+    public Mono<RecentStats> get(List<StatsQueryDto> queries,
+                                 Function<List<StatsQueryDto>, Mono<List<StatsResponseDto>>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.apply(queries).map(stats -> new RecentStats(stats, Set.of()));
+        }
+        return Mono.defer(() -> {
+            long now = System.nanoTime();
+            long refreshAfter = properties.getRefreshAfter().toNanos();
+            CompletableFuture<Void> refresh = new CompletableFuture<>();
+            List<StatsQueryDto> toRefresh = new ArrayList<>();
+            List<CompletableFuture<Void>> awaited = new ArrayList<>();
+            synchronized (entries) {
+                for (StatsQueryDto query : queries) {
+                    Key key = key(query);
+                    Entry entry = entries.get(key);
+                    boolean expired = entry == null || now - entry.getUpdatedAtNanos() >= refreshAfter;
+                    (entry == null ? missing : expired ? stale : fresh).increment();
+                    CompletableFuture<Void> loading = refreshing.get(key);
+                    if (expired && loading == null) {
+                        refreshing.put(key, refresh);
+                        toRefresh.add(query);
+                        loading = refresh;
+                    }
+                    if (entry == null) {
+                        awaited.add(loading);
+                    }
+                }
+            }
+            if (!toRefresh.isEmpty()) {
+                refresh(toRefresh, refresh, loader);
+            }
+            if (awaited.isEmpty()) {
+                return Mono.just(collect(queries));
+            }
+            return Mono.fromFuture(CompletableFuture.allOf(awaited.toArray(CompletableFuture[]::new)))
+                    .then(Mono.fromCallable(() -> collect(queries)));
+        });
+    }
+
+    /**
+     * Загрузка в обход известных ответов (read-your-write: только что записанный хит должен попасть в ответ).
+     * Результат сохраняется как последний известный; при ошибке отдается прежний ответ или missing.
+     */
+    public Mono<RecentStats> load(List<StatsQueryDto> queries,
+                                  Function<List<StatsQueryDto>, Mono<List<StatsResponseDto>>> loader) {
+        if (!properties.isEnabled()) {
+            return get(queries, loader);
+        }
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return loader.apply(queries)
+                    .map(stats -> {
+                        store(queries, stats, started);
+                        return new RecentStats(stats, Set.of());
+                    })
+                    .onErrorResume(e -> {
+                        log.debug("Не удалось загрузить статистику {} uri: {}", queries.size(), e.getMessage());
+                        return Mono.fromCallable(() -> collect(queries));
+                    });
+        });
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    void refresh(List<StatsQueryDto> queries, CompletableFuture<Void> done,
+                 Function<List<StatsQueryDto>, Mono<List<StatsResponseDto>>> loader) {
+        long started = System.nanoTime();
+        Mono.defer(() -> loader.apply(queries))
+                .doFinally(signal -> release(queries, done))
+                .subscribe(stats -> store(queries, stats, started),
+                        e -> log.debug("Не удалось обновить статистику {} uri: {}", queries.size(), e.getMessage()));
+    }
+
+    // Возраст ответа считается от начала загрузки; более ранняя загрузка не затирает более позднюю.
+    void store(List<StatsQueryDto> queries, List<StatsResponseDto> stats, long startedNanos) {
+        Map<String, List<StatsResponseDto>> byUri = stats.stream()
+                .collect(Collectors.groupingBy(StatsResponseDto::getUri));
+        synchronized (entries) {
+            for (StatsQueryDto query : queries) {
+                Key key = key(query);
+                Entry entry = entries.get(key);
+                if (entry == null || entry.getUpdatedAtNanos() - startedNanos <= 0) {
+                    entries.put(key, new Entry(byUri.getOrDefault(query.getUri(), List.of()), startedNanos));
+                }
+            }
+        }
+    }
+
+    void release(List<StatsQueryDto> queries, CompletableFuture<Void> done) {
+        synchronized (entries) {
+            for (StatsQueryDto query : queries) {
+                refreshing.remove(key(query), done);
+            }
+        }
+        done.complete(null);
+    }
+
+    RecentStats collect(List<StatsQueryDto> queries) {
+        Set<Key> keys = queries.stream()
+                .map(LastKnownStats::key)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        List<StatsResponseDto> result = new ArrayList<>();
+        Set<String> unknown = new HashSet<>();
+        synchronized (entries) {
+            for (Key key : keys) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    result.addAll(entry.getStats());
+                } else {
+                    unknown.add(key.getUri());
+                }
+            }
+        }
+        return new RecentStats(result, unknown);
+    }
+
+    static Key key(StatsQueryDto query) {
+        return new Key(query.getUri(), query.getStart(), query.isUnique());
+    }
+
+    @Value
+    static class Key {
+        String uri;
+        LocalDateTime start;
+        boolean unique;
+    }
+
+    @Value
+    static class Entry {
+        List<StatsResponseDto> stats;
+        long updatedAtNanos;
+    }
+}
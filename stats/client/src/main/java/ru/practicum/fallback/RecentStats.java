@@ -0,0 +1,21 @@
+package ru.practicum.fallback;
+
+import lombok.Value;
+import ru.practicum.StatsResponseDto;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ответ LastKnownStats: известная статистика и uri, для которых ответа еще нет (первая загрузка не удалась).
+ * Отсутствие строки для такого uri не означает ноль просмотров.
+ */
+@Value
+public class RecentStats {
+    List<StatsResponseDto> stats;
+    Set<String> missing;
+
+    public boolean isMissing(String uri) {
+        return missing.contains(uri);
+    }
+}
@@ -0,0 +1,113 @@
+package ru.practicum.fallback;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Ограничение вызовов сервера статистики: каждый вызов прерывается через callTimeout, а после failureThreshold
+ * отказов подряд (сеть, 5xx, таймаут) чтение размыкается на openDuration и сразу завершается StatsUnavailableException.
+ * Разомкнутая цепь раз в openDuration пропускает пробный вызов; его успех замыкает цепь.
+ * Метрики: stats.client.breaker.open, stats.client.breaker.rejected.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class StatsCallGuard {
+
+    final Duration callTimeout;
+    final int failureThreshold;
+    final long openNanos;
+    final Counter rejected;
+    int failures;
+    boolean open;
+    long openedAt;
+
+    public StatsCallGuard(FallbackProperties properties, MeterRegistry meterRegistry) {
+        this.callTimeout = properties.getCallTimeout();
+        this.failureThreshold = properties.getFailureThreshold();
+        this.openNanos = properties.getOpenDuration().toNanos();
+        this.rejected = meterRegistry.counter("stats.client.breaker.rejected");
+        meterRegistry.gauge("stats.client.breaker.open", this, guard -> guard.isOpen() ? 1 : 0);
+    }
+
+    // Без ограничений: для клиентов, созданных вне Spring.
+    public static StatsCallGuard disabled() {
+        FallbackProperties properties = new FallbackProperties();
+        properties.setCallTimeout(Duration.ofDays(1));
+        properties.setFailureThreshold(Integer.MAX_VALUE);
+        return new StatsCallGuard(properties, new SimpleMeterRegistry());
+    }
+
+    public <T> Mono<T> timeout(Mono<T> call) {
+        return call.timeout(callTimeout);
+    }
+
+    public <T> Mono<T> protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                rejected.increment();
+                return Mono.error(new StatsUnavailableException("Сервер статистики недоступен"));
+            }
+            return timeout(call)
+                    .doOnSuccess(result -> onSuccess())
+                    .doOnError(e -> onFailure(e));
+        });
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (!open) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - openedAt < openNanos) {
+            return false;
+        }
+        openedAt = now;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        if (open) {
+            log.info("Сервер статистики снова отвечает");
+        }
+        failures = 0;
+        open = false;
+    }
+
+    synchronized void onFailure(Throwable e) {
+        if (!isFailure(e)) {
+            return;
+        }
+        failures++;
+        if (!open && failures >= failureThreshold) {
+            open = true;
+            openedAt = System.nanoTime();
+            log.warn("Сервер статистики не отвечает, запросы приостановлены на {}: {}", Duration.ofNanos(openNanos),
+                    e.getMessage());
+        }
+    }
+
+    // Ошибки запроса (4xx) говорят о самом запросе, а не о доступности сервера.
+    public static boolean isFailure(Throwable e) {
+        if (e instanceof TimeoutException || e instanceof WebClientRequestException) {
+            return true;
+        }
+        return e instanceof WebClientResponseException
+                && ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+    }
+}
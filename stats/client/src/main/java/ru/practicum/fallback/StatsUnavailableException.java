@@ -0,0 +1,7 @@
+package ru.practicum.fallback;
+
+public class StatsUnavailableException extends RuntimeException {
+    public StatsUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.fanout;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats-server.fan-out")
+public class FanOutProperties {
+
+    int chunkSize = 100;
+
+    int concurrency = 4;
+
+    int maxQueryLength = 4096;
+}
@@ -0,0 +1,26 @@
+package ru.practicum.nearcache;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats-server.cache")
+public class NearCacheProperties {
+
+    boolean enabled = true;
+
+    Duration ttl = Duration.ofSeconds(1);
+
+    int maxEntries = 10000;
+
+    Duration bucket = Duration.ofSeconds(1);
+}
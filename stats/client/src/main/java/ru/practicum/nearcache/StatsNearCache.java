@@ -0,0 +1,156 @@
+package ru.practicum.nearcache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.AccessLevel;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+import ru.practicum.StatsResponseDto;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Ближний кэш ответов /stats в клиенте: ключ - (uris, unique, start, end с округлением вверх до bucket),
+ * запись живет ttl, размер ограничен maxEntries (LRU). Одновременные одинаковые запросы ждут один общий
+ * HTTP-вызов (single flight); ошибка вызова отдается всем ожидающим и не кэшируется.
+ * Метрики: stats.client.cache.requests{result=hit|miss|coalesced}, stats.client.cache.hit.ratio, stats.client.cache.size.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class StatsNearCache {
+
+    static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    final NearCacheProperties properties;
+    final Map<Key, Entry> entries;
+    final Counter hits;
+    final Counter misses;
+    final Counter coalesced;
+
+    public StatsNearCache(NearCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > properties.getMaxEntries();
+            }
+        };
+        this.hits = meterRegistry.counter("stats.client.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("stats.client.cache.requests", "result", "miss");
+        this.coalesced = meterRegistry.counter("stats.client.cache.requests", "result", "coalesced");
+        meterRegistry.gauge("stats.client.cache.size", entries, Map::size);
+        meterRegistry.gauge("stats.client.cache.hit.ratio", this, StatsNearCache::hitRatio);
+    }
+
+    public static StatsNearCache disabled() {
+        NearCacheProperties properties = new NearCacheProperties();
+        properties.setEnabled(false);
+        return new StatsNearCache(properties, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Загрузчик получает start и округленный end; end в другом формате кэш не округляет и не кэширует.
+     * Возвращаемый future общий для всех ожидающих: отменять его нельзя, подписчикам нужна копия.
+     */
+    public CompletableFuture<List<StatsResponseDto>> get(String start, String end, List<String> uris, Boolean unique,
+                                                         BiFunction<String, String, CompletableFuture<List<StatsResponseDto>>> loader) {
+        if (!properties.isEnabled()) {
+            return load(loader, start, end);
+        }
+        String roundedEnd;
+        try {
+            roundedEnd = ceil(LocalDateTime.parse(end, FORMATTER)).format(FORMATTER);
+        } catch (DateTimeParseException e) {
+            return load(loader, start, end);
+        }
+        Key key = new Key(start, roundedEnd, uris == null ? null : uris.stream().distinct().sorted().collect(Collectors.toList()),
+                Boolean.TRUE.equals(unique));
+        long now = System.nanoTime();
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !entry.getFuture().isDone()) {
+                coalesced.increment();
+            } else if (entry != null && now - entry.getExpiresAtNanos() < 0) {
+                hits.increment();
+            } else {
+                misses.increment();
+                entry = new Entry(new CompletableFuture<>(), now + properties.getTtl().toNanos());
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+        if (owner) {
+            Entry loading = entry;
+            load(loader, start, roundedEnd).whenComplete((stats, e) -> {
+                if (e == null) {
+                    loading.getFuture().complete(List.copyOf(stats));
+                    return;
+                }
+                synchronized (entries) {
+                    entries.remove(key, loading);
+                }
+                loading.getFuture().completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+            });
+        }
+        return entry.getFuture();
+    }
+
+    static CompletableFuture<List<StatsResponseDto>> load(
+            BiFunction<String, String, CompletableFuture<List<StatsResponseDto>>> loader, String start, String end) {
+        try {
+            return loader.apply(start, end);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    LocalDateTime ceil(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        long size = properties.getBucket().getSeconds();
+        if (size <= 1) {
+            return time;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(seconds + size - 1, size) * size, 0, ZoneOffset.UTC);
+    }
+
+    double hitRatio() {
+        double served = hits.count() + coalesced.count();
+        double total = served + misses.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    @Value
+    static class Key {
+        String start;
+        String end;
+        List<String> uris;
+        boolean unique;
+    }
+
+    @Value
+    static class Entry {
+        CompletableFuture<List<StatsResponseDto>> future;
+        long expiresAtNanos;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.practicum.recorder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.util.retry.Retry;
+import ru.practicum.StatsClient;
+import ru.practicum.StatsHitDto;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронная запись хитов: record() только кладет хит в ограниченную очередь, а фоновый поток отправляет
+ * накопленное пачками до batchSize в POST /hits, повторяя отправку с экспоненциальной задержкой только
+ * когда пачка заведомо не записана: соединение не установлено, 503 или 429. Таймаут и прочие 5xx не повторяются -
+ * сервер мог уже записать пачку, а POST /hits не идемпотентен. Переполненная очередь отбрасывает хиты по политике overflow.
+ * Метрики: stats.client.queue.depth, stats.client.hits.sent, stats.client.hits.dropped{reason}.
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitRecorder {
+
+    static final long POLL_TIMEOUT_MS = 100;
+
+    final HitRecorderProperties properties;
+    final StatsClient statsClient;
+    final BlockingQueue<StatsHitDto> queue;
+    final Counter sent;
+    final Counter droppedOverflow;
+    final Counter droppedFailed;
+    final Counter droppedShutdown;
+    volatile boolean running;
+    Thread sender;
+
+    public HitRecorder(HitRecorderProperties properties, StatsClient statsClient, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.statsClient = statsClient;
+        this.queue = new ArrayBlockingQueue<>(properties.getCapacity());
+        meterRegistry.gauge("stats.client.queue.depth", queue, BlockingQueue::size);
+        this.sent = meterRegistry.counter("stats.client.hits.sent");
+        this.droppedOverflow = meterRegistry.counter("stats.client.hits.dropped", "reason", "overflow");
+        this.droppedFailed = meterRegistry.counter("stats.client.hits.dropped", "reason", "failed");
+        this.droppedShutdown = meterRegistry.counter("stats.client.hits.dropped", "reason", "shutdown");
+    }
+
+    @PostConstruct
+    void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        running = true;
+        sender = new Thread(this::run, "stats-hit-recorder");
+        sender.setDaemon(true);
+        sender.start();
+        log.info("Асинхронная запись хитов запущена: емкость {}, пачка {}, переполнение {}", properties.getCapacity(),
+                properties.getBatchSize(), properties.getOverflow());
+    }
+
+    // Без фонового потока (выключен или уже остановлен) хит отправляется синхронно, как раньше.
+    public void record(StatsHitDto hit) {
+        if (!running) {
+            statsClient.saveHit(hit);
+            return;
+        }
+        if (queue.offer(hit)) {
+            return;
+        }
+        if (properties.getOverflow() == OverflowPolicy.DROP_NEWEST) {
+            droppedOverflow.increment();
+            return;
+        }
+        while (!queue.offer(hit)) {
+            if (queue.poll() != null) {
+                droppedOverflow.increment();
+            }
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sender == null) {
+            return;
+        }
+        running = false;
+        try {
+            sender.join(properties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int rest = queue.size();
+        if (rest > 0) {
+            queue.clear();
+            droppedShutdown.increment(rest);
+            log.warn("При остановке не отправлено хитов: {}", rest);
+        }
+        log.info("Асинхронная запись хитов остановлена");
+    }
+
+    void run() {
+        List<StatsHitDto> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                StatsHitDto first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, properties.getBatchSize() - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Пока пачка повторяется, новые хиты копятся в очереди и уходят следующей пачкой.
+    void send(List<StatsHitDto> batch) {
+        List<StatsHitDto> hits = List.copyOf(batch);
+        try {
+            statsClient.saveHitsAsync(hits)
+                    .retryWhen(Retry.backoff(properties.getMaxRetries(), properties.getRetryBackoff())
+                            .maxBackoff(properties.getMaxRetryBackoff())
+                            .filter(HitRecorder::isRetryable))
+                    .block();
+            sent.increment(hits.size());
+        } catch (RuntimeException e) {
+            droppedFailed.increment(hits.size());
+            log.warn("Не удалось отправить {} хитов на сервер статистики: {}", hits.size(), e.getMessage());
+        }
+    }
+
+    public static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientRequestException) {
+            return e.getCause() instanceof ConnectException;
+        }
+        if (e instanceof WebClientResponseException) {
+            HttpStatus status = ((WebClientResponseException) e).getStatusCode();
+            return status == HttpStatus.SERVICE_UNAVAILABLE || status == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.recorder;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats-server.recorder")
+public class HitRecorderProperties {
+
+    boolean enabled = true;
+
+    int capacity = 10000;
+
+    int batchSize = 500;
+
+    OverflowPolicy overflow = OverflowPolicy.DROP_OLDEST;
+
+    int maxRetries = 5;
+
+    Duration retryBackoff = Duration.ofMillis(200);
+
+    Duration maxRetryBackoff = Duration.ofSeconds(5);
+
+    Duration shutdownTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,8 @@
+package ru.practicum.recorder;
+
+public enum OverflowPolicy {
+    // отбросить новый хит, очередь не меняется
+    DROP_NEWEST,
+    // вытеснить самый старый хит из очереди
+    DROP_OLDEST
+}
@@ -0,0 +1,181 @@
+package ru.practicum;
+
+import lombok.experimental.UtilityClass;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Компактный двоичный формат (application/x-stats-binary) для StatsHitDto и StatsResponseDto.
+ * Сообщение - последовательность записей, каждая с префиксом длины (varint);
+ * строки - varint (длина + 1, 0 - null) и UTF-8, числа - zigzag varint с признаком null, время - epoch millis (UTC).
+ */
+@UtilityClass
+public class StatsBinaryCodec {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-stats-binary";
+
+    public static byte[] encodeHits(List<StatsHitDto> hits) {
+        Writer message = new Writer();
+        Writer record = new Writer();
+        for (StatsHitDto hit : hits) {
+            record.reset();
+            record.writeString(hit.getApp());
+            record.writeString(hit.getUri());
+            record.writeString(hit.getIp());
+            record.writeLong(hit.getTimestamp() == null ? null
+                    : hit.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+            message.writeRecord(record);
+        }
+        return message.toByteArray();
+    }
+
+    public static List<StatsHitDto> decodeHits(byte[] bytes) {
+        Reader message = new Reader(bytes);
+        List<StatsHitDto> hits = new ArrayList<>();
+        while (message.hasMore()) {
+            Reader record = message.readRecord();
+            String app = record.readString();
+            String uri = record.readString();
+            String ip = record.readString();
+            Long millis = record.readLong();
+            hits.add(new StatsHitDto(app, uri, ip, millis == null ? null
+                    : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC)));
+        }
+        return hits;
+    }
+
+    public static byte[] encodeStats(List<StatsResponseDto> stats) {
+        Writer message = new Writer();
+        Writer record = new Writer();
+        for (StatsResponseDto dto : stats) {
+            record.reset();
+            record.writeString(dto.getApp());
+            record.writeString(dto.getUri());
+            record.writeLong(dto.getHits());
+            message.writeRecord(record);
+        }
+        return message.toByteArray();
+    }
+
+    public static List<StatsResponseDto> decodeStats(byte[] bytes) {
+        Reader message = new Reader(bytes);
+        List<StatsResponseDto> stats = new ArrayList<>();
+        while (message.hasMore()) {
+            Reader record = message.readRecord();
+            stats.add(new StatsResponseDto(record.readString(), record.readString(), record.readLong()));
+        }
+        return stats;
+    }
+
+    static class Writer extends ByteArrayOutputStream {
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeLong(Long value) {
+            if (value == null) {
+                write(0);
+                return;
+            }
+            write(1);
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeRecord(Writer record) {
+            writeVarint(record.size());
+            write(record.buf, 0, record.size());
+        }
+    }
+
+    static class Reader {
+        final byte[] bytes;
+        final int limit;
+        int position;
+
+        Reader(byte[] bytes) {
+            this(bytes, 0, bytes.length);
+        }
+
+        Reader(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return position < limit;
+        }
+
+        int readByte() {
+            if (position >= limit) {
+                throw new IllegalArgumentException("Неожиданный конец двоичного сообщения статистики");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Некорректное varint-значение в сообщении статистики");
+        }
+
+        String readString() {
+            int length = Math.toIntExact(readVarint());
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (length > limit - position) {
+                throw new IllegalArgumentException("Неожиданный конец двоичного сообщения статистики");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        Long readLong() {
+            if (readByte() == 0) {
+                return null;
+            }
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        Reader readRecord() {
+            int length = Math.toIntExact(readVarint());
+            if (length > limit - position) {
+                throw new IllegalArgumentException("Неожиданный конец двоичного сообщения статистики");
+            }
+            Reader record = new Reader(bytes, position, position + length);
+            position += length;
+            return record;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StatsBinaryCodecTest {
+
+    @Test
+    void hitsRoundTrip() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 3, 1, 12, 30, 15);
+        List<StatsHitDto> hits = List.of(
+                new StatsHitDto("ewm-main-service", "/events/1", "192.168.0.1", timestamp),
+                new StatsHitDto("ewm", "/события/2", "2001:db8::1", LocalDateTime.of(1960, 1, 1, 0, 0)),
+                new StatsHitDto(null, "", null, null));
+
+        List<StatsHitDto> decoded = StatsBinaryCodec.decodeHits(StatsBinaryCodec.encodeHits(hits));
+
+        assertThat(decoded).hasSize(3);
+        for (int i = 0; i < hits.size(); i++) {
+            assertThat(decoded.get(i)).usingRecursiveComparison().isEqualTo(hits.get(i));
+        }
+    }
+
+    @Test
+    void statsRoundTripKeepsSignAndNull() {
+        List<StatsResponseDto> stats = List.of(
+                new StatsResponseDto("ewm", "/events", 0L),
+                new StatsResponseDto("ewm", "/events/1", Long.MAX_VALUE),
+                new StatsResponseDto("ewm", "/events/2", Long.MIN_VALUE),
+                new StatsResponseDto("ewm", "/events/3", -1L),
+                new StatsResponseDto("ewm", "/events/4", null));
+
+        List<StatsResponseDto> decoded = StatsBinaryCodec.decodeStats(StatsBinaryCodec.encodeStats(stats));
+
+        assertThat(decoded).usingRecursiveFieldByFieldElementComparator().isEqualTo(stats);
+    }
+
+    @Test
+    void varintUsesSevenBitGroups() {
+        StatsBinaryCodec.Writer writer = new StatsBinaryCodec.Writer();
+        writer.writeVarint(0);
+        writer.writeVarint(127);
+        writer.writeVarint(128);
+        writer.writeVarint(300);
+        writer.writeVarint(-1);
+
+        byte[] bytes = writer.toByteArray();
+
+        assertThat(Arrays.copyOfRange(bytes, 0, 6)).containsExactly(0x00, 0x7F, 0x80, 0x01, 0xAC, 0x02);
+        assertThat(bytes).hasSize(6 + 10);
+        StatsBinaryCodec.Reader reader = new StatsBinaryCodec.Reader(bytes);
+        assertThat(reader.readVarint()).isEqualTo(0);
+        assertThat(reader.readVarint()).isEqualTo(127);
+        assertThat(reader.readVarint()).isEqualTo(128);
+        assertThat(reader.readVarint()).isEqualTo(300);
+        assertThat(reader.readVarint()).isEqualTo(-1);
+        assertThat(reader.hasMore()).isFalse();
+    }
+
+    @Test
+    void emptyMessageDecodesToEmptyList() {
+        assertThat(StatsBinaryCodec.encodeHits(List.of())).isEmpty();
+        assertThat(StatsBinaryCodec.decodeHits(new byte[0])).isEmpty();
+        assertThat(StatsBinaryCodec.decodeStats(new byte[0])).isEmpty();
+    }
+
+    @Test
+    void truncatedMessageIsRejected() {
+        byte[] bytes = StatsBinaryCodec.encodeHits(List.of(
+                new StatsHitDto("ewm", "/events/1", "10.0.0.1", LocalDateTime.of(2024, 1, 1, 0, 0))));
+
+        assertThatThrownBy(() -> StatsBinaryCodec.decodeHits(Arrays.copyOf(bytes, bytes.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StatsBinaryCodec.decodeHits(new byte[]{(byte) 0x80}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void recordLengthBeyondMessageIsRejected() {
+        // запись объявляет 5 байт, а в сообщении их два
+        assertThatThrownBy(() -> StatsBinaryCodec.decodeStats(new byte[]{5, 1, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void overlongVarintIsRejected() {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0xFF);
+
+        assertThatThrownBy(() -> new StatsBinaryCodec.Reader(bytes).readVarint())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.archive;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Колоночный архив хитов для выгрузки и загрузки (/admin/hits/export, /admin/hits/import).
+ * Файл сжат GZIP: заголовок (MAGIC, VERSION), затем блоки до BLOCK_SIZE строк и блок с нулем строк в конце.
+ * Блок: число строк, новые строки словарей app и uri, затем колонки app_id, uri_id, ip, timestamp,
+ * каждая с префиксом длины. Номера в словарях сквозные для всего файла; ip - 4 байта для IPv4 и 16 для IPv6
+ * с байтом длины, timestamp - epoch millis (UTC) разностью с предыдущей строкой (zigzag varint).
+ */
+@UtilityClass
+public class HitArchive {
+
+    public static final int MAGIC = 0x45574D48;
+
+    public static final int VERSION = 1;
+
+    public static final int BLOCK_SIZE = 65536;
+
+    public static final String FILE_NAME = "hits.ewmh";
+}
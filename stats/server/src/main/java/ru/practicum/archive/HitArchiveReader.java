@@ -0,0 +1,159 @@
+package ru.practicum.archive;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.model.StatsHit;
+import util.IpAddresses;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Читает архив поблочно: readBlock() возвращает строки очередного блока или null после последнего.
+ * Ошибки формата - IllegalArgumentException, обрыв или повреждение сжатого потока - IOException.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitArchiveReader {
+
+    final DataInputStream in;
+    final List<String> apps = new ArrayList<>();
+    final List<String> uris = new ArrayList<>();
+    long lastMillis;
+    boolean finished;
+
+    public HitArchiveReader(InputStream source) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(source, 65536), 65536));
+        if (in.readInt() != HitArchive.MAGIC) {
+            throw new IllegalArgumentException("Файл не является архивом хитов");
+        }
+        int version = in.readUnsignedByte();
+        if (version != HitArchive.VERSION) {
+            throw new IllegalArgumentException("Неподдерживаемая версия архива хитов: " + version);
+        }
+    }
+
+    public List<StatsHit> readBlock() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int rows = readInt(HitArchive.BLOCK_SIZE);
+        if (rows == 0) {
+            finished = true;
+            return null;
+        }
+        readStrings(apps);
+        readStrings(uris);
+        byte[][] columns = new byte[4][];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new byte[readInt(Integer.MAX_VALUE)];
+            in.readFully(columns[i]);
+        }
+        Cursor appColumn = new Cursor(columns[0]);
+        Cursor uriColumn = new Cursor(columns[1]);
+        Cursor ipColumn = new Cursor(columns[2]);
+        Cursor timeColumn = new Cursor(columns[3]);
+        List<StatsHit> hits = new ArrayList<>(rows);
+        byte[] ip = new byte[IpAddresses.LENGTH];
+        for (int row = 0; row < rows; row++) {
+            String app = lookup(apps, appColumn.readVarint());
+            String uri = lookup(uris, uriColumn.readVarint());
+            int length = ipColumn.readByte();
+            if (length == 4) {
+                Arrays.fill(ip, 0, 10, (byte) 0);
+                ip[10] = (byte) 0xff;
+                ip[11] = (byte) 0xff;
+                ipColumn.readBytes(ip, 12, 4);
+            } else if (length == IpAddresses.LENGTH) {
+                ipColumn.readBytes(ip, 0, IpAddresses.LENGTH);
+            } else {
+                throw new IllegalArgumentException("Некорректная длина ip-адреса в архиве: " + length);
+            }
+            long delta = timeColumn.readVarint();
+            lastMillis += (delta >>> 1) ^ -(delta & 1);
+            hits.add(new StatsHit(null, app, uri, IpAddresses.toString(ip),
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(lastMillis), ZoneOffset.UTC)));
+        }
+        return hits;
+    }
+
+    void readStrings(List<String> dictionary) throws IOException {
+        int count = readInt(HitArchive.BLOCK_SIZE);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[readInt(Integer.MAX_VALUE)];
+            in.readFully(bytes);
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    int readInt(int max) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Неожиданный конец архива хитов");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value > max) {
+                    throw new IllegalArgumentException("Некорректный размер в архиве хитов: " + value);
+                }
+                return (int) value;
+            }
+        }
+        throw new IllegalArgumentException("Некорректное varint-значение в архиве хитов");
+    }
+
+    static String lookup(List<String> dictionary, long id) {
+        if (id >= dictionary.size()) {
+            throw new IllegalArgumentException("Ссылка на отсутствующую строку словаря архива: " + id);
+        }
+        return dictionary.get((int) id);
+    }
+
+    static class Cursor {
+        final byte[] bytes;
+        int position;
+
+        Cursor(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Колонка архива хитов короче числа строк");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        void readBytes(byte[] target, int offset, int length) {
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Колонка архива хитов короче числа строк");
+            }
+            System.arraycopy(bytes, position, target, offset, length);
+            position += length;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Некорректное varint-значение в архиве хитов");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ru.practicum.archive;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.model.StatsHit;
+import util.IpAddresses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Пишет архив блоками по мере поступления строк, поэтому выгрузка не держит в памяти больше одного блока.
+ * close() дописывает последний блок и завершает GZIP, но не закрывает исходный поток.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitArchiveWriter implements Closeable {
+
+    final GZIPOutputStream gzip;
+    final DataOutputStream out;
+    final Map<String, Integer> apps = new HashMap<>();
+    final Map<String, Integer> uris = new HashMap<>();
+    final List<String> newApps = new ArrayList<>();
+    final List<String> newUris = new ArrayList<>();
+    final Column appColumn = new Column();
+    final Column uriColumn = new Column();
+    final Column ipColumn = new Column();
+    final Column timeColumn = new Column();
+    int rows;
+    long lastMillis;
+    long written;
+
+    public HitArchiveWriter(OutputStream target) throws IOException {
+        gzip = new FastGzipOutputStream(target);
+        out = new DataOutputStream(gzip);
+        out.writeInt(HitArchive.MAGIC);
+        out.writeByte(HitArchive.VERSION);
+    }
+
+    public void write(StatsHit hit) throws IOException {
+        write(hit.getApp(), hit.getUri(), IpAddresses.toBytes(hit.getIp()),
+                hit.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    public void write(String app, String uri, byte[] ip, long millis) throws IOException {
+        appColumn.writeVarint(id(apps, newApps, app));
+        uriColumn.writeVarint(id(uris, newUris, uri));
+        if (isIpv4Mapped(ip)) {
+            ipColumn.write(4);
+            ipColumn.write(ip, 12, 4);
+        } else {
+            ipColumn.write(IpAddresses.LENGTH);
+            ipColumn.write(ip, 0, IpAddresses.LENGTH);
+        }
+        long delta = millis - lastMillis;
+        timeColumn.writeVarint((delta << 1) ^ (delta >> 63));
+        lastMillis = millis;
+        written++;
+        if (++rows == HitArchive.BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rows > 0) {
+            writeBlock();
+        }
+        writeVarint(out, 0);
+        out.flush();
+        gzip.finish();
+    }
+
+    void writeBlock() throws IOException {
+        writeVarint(out, rows);
+        writeStrings(newApps);
+        writeStrings(newUris);
+        for (Column column : List.of(appColumn, uriColumn, ipColumn, timeColumn)) {
+            writeVarint(out, column.size());
+            column.writeTo(out);
+            column.reset();
+        }
+        rows = 0;
+    }
+
+    void writeStrings(List<String> values) throws IOException {
+        writeVarint(out, values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+        values.clear();
+    }
+
+    static int id(Map<String, Integer> ids, List<String> added, String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = ids.size();
+            ids.put(value, id);
+            added.add(value);
+        }
+        return id;
+    }
+
+    static boolean isIpv4Mapped(byte[] ip) {
+        for (int i = 0; i < 10; i++) {
+            if (ip[i] != 0) {
+                return false;
+            }
+        }
+        return ip[10] == (byte) 0xff && ip[11] == (byte) 0xff;
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static class Column extends ByteArrayOutputStream {
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+
+    // Колонки уже компактны, поэтому выгоднее быстрое сжатие, чем максимальное.
+    static class FastGzipOutputStream extends GZIPOutputStream {
+
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 65536);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
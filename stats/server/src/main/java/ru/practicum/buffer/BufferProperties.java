@@ -0,0 +1,28 @@
+package ru.practicum.buffer;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.buffer")
+public class BufferProperties {
+
+    boolean enabled = true;
+
+    int capacity = 10000;
+
+    int flushSize = 500;
+
+    Duration flushInterval = Duration.ofMillis(20);
+
+    Duration shutdownTimeout = Duration.ofSeconds(10);
+
+    DurabilityMode durability = DurabilityMode.FLUSH;
+}
@@ -0,0 +1,6 @@
+package ru.practicum.buffer;
+
+public enum DurabilityMode {
+    ENQUEUE,
+    FLUSH
+}
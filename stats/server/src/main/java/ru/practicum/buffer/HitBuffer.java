@@ -0,0 +1,216 @@
+package ru.practicum.buffer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.cache.StatsCache;
+import ru.practicum.exception.BufferFullException;
+import ru.practicum.exception.WriteNotConfirmedException;
+import ru.practicum.model.StatsHit;
+import ru.practicum.repository.StatsRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Буфер отложенной записи хитов: запросы /hit складываются в ограниченную очередь,
+ * а отдельный поток сбрасывает их в таблицу hits пачками (group commit)
+ * по достижении flushSize записей или по истечении flushInterval.
+ * Метрики: stats.buffer.depth - длина очереди, stats.buffer.flush.size и stats.buffer.flush - размер и время пачек,
+ * stats.buffer.dropped - хиты, потерянные без ожидающего запроса (ошибка пачки в режиме ENQUEUE, остановка).
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitBuffer {
+
+    final BufferProperties properties;
+    final StatsRepository statsRepository;
+    final StatsCache statsCache;
+    final BlockingQueue<PendingHit> queue;
+    final DistributionSummary flushSizes;
+    final Timer flushTimer;
+    final Counter dropped;
+    volatile boolean running;
+    Thread flusher;
+
+    public HitBuffer(BufferProperties properties, StatsRepository statsRepository, StatsCache statsCache,
+                     MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.statsRepository = statsRepository;
+        this.statsCache = statsCache;
+        this.queue = new ArrayBlockingQueue<>(properties.getCapacity());
+        meterRegistry.gauge("stats.buffer.depth", queue, BlockingQueue::size);
+        this.flushSizes = DistributionSummary.builder("stats.buffer.flush.size")
+                .baseUnit("hits")
+                .register(meterRegistry);
+        this.flushTimer = meterRegistry.timer("stats.buffer.flush");
+        this.dropped = meterRegistry.counter("stats.buffer.dropped");
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    @PostConstruct
+    void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::run, "stats-hit-buffer");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Буфер хитов запущен: емкость {}, пачка {}, интервал {}, режим {}", properties.getCapacity(),
+                properties.getFlushSize(), properties.getFlushInterval(), properties.getDurability());
+    }
+
+    public void add(StatsHit hit) {
+        if (!running) {
+            throw new BufferFullException("Буфер статистики остановлен");
+        }
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        PendingHit pending = new PendingHit(hit, flushed);
+        if (!queue.offer(pending)) {
+            throw new BufferFullException("Буфер статистики переполнен, повторите запрос позже");
+        }
+        // stop() мог уже выбрать очередь: хит, который он не забрал, возвращается вызывающему.
+        if (!running && queue.remove(pending)) {
+            throw new BufferFullException("Буфер статистики остановлен");
+        }
+        if (properties.getDurability() == DurabilityMode.FLUSH) {
+            awaitFlush(flushed);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        try {
+            flusher.join(properties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingHit> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+        rest.clear();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            BufferFullException stopped = new BufferFullException("Буфер статистики остановлен");
+            rest.forEach(pending -> pending.getFlushed().completeExceptionally(stopped));
+            countDropped(rest.size());
+            log.warn("При остановке буфера не записано хитов: {}", rest.size());
+        }
+        log.info("Буфер хитов остановлен");
+    }
+
+    void run() {
+        List<PendingHit> batch = new ArrayList<>(properties.getFlushSize());
+        long intervalNanos = properties.getFlushInterval().toNanos();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingHit first = queue.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + intervalNanos;
+                while (batch.size() < properties.getFlushSize()) {
+                    queue.drainTo(batch, properties.getFlushSize() - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= properties.getFlushSize() || left <= 0) {
+                        break;
+                    }
+                    PendingHit next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void flush(List<PendingHit> batch) {
+        List<StatsHit> hits = batch.stream()
+                .map(PendingHit::getHit)
+                .collect(Collectors.toList());
+        flushSizes.record(hits.size());
+        Timer.Sample sample = Timer.start();
+        try {
+            statsRepository.saveAll(hits);
+            sample.stop(flushTimer);
+            statsCache.invalidate(hits);
+            batch.forEach(pending -> pending.getFlushed().complete(null));
+        } catch (Throwable e) {
+            log.error("Ошибка сохранения пачки хитов ({} шт.): {}", hits.size(), e.getMessage());
+            batch.forEach(pending -> pending.getFlushed().completeExceptionally(e));
+            countDropped(hits.size());
+        }
+    }
+
+    // В режиме FLUSH об ошибке узнает ожидающий запрос, в ENQUEUE хиты теряются молча - их считает метрика.
+    void countDropped(int count) {
+        if (properties.getDurability() == DurabilityMode.ENQUEUE) {
+            dropped.increment(count);
+        }
+    }
+
+    // Пачка ждет не дольше flushInterval, запись - не дольше shutdownTimeout. Хит уже в очереди и может записаться
+    // позже, поэтому не 503: повтор запроса его бы задвоил.
+    void awaitFlush(CompletableFuture<Void> flushed) {
+        try {
+            flushed.get(properties.getFlushInterval().plus(properties.getShutdownTimeout()).toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteNotConfirmedException("Ожидание записи хита прервано");
+        } catch (TimeoutException e) {
+            throw new WriteNotConfirmedException("Запись хита не подтверждена вовремя");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    static class PendingHit {
+        StatsHit hit;
+        CompletableFuture<Void> flushed;
+    }
+}
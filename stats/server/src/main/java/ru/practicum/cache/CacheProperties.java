@@ -0,0 +1,26 @@
+package ru.practicum.cache;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.cache")
+public class CacheProperties {
+
+    boolean enabled = true;
+
+    long maxRows = 200000;
+
+    Duration openTtl = Duration.ofSeconds(5);
+
+    Duration closedAfter = Duration.ofMinutes(1);
+
+    Duration closedMaxAge = Duration.ofHours(1);
+}
@@ -0,0 +1,30 @@
+package ru.practicum.cache;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.StatsResponseDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CachedStats {
+    List<StatsResponseDto> stats;
+    String etag;
+    LocalDateTime start;
+    LocalDateTime end;
+    boolean closed;
+    long expiresAtNanos;
+
+    boolean isExpired(long nowNanos) {
+        return !closed && nowNanos - expiresAtNanos >= 0;
+    }
+
+    boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return !end.isBefore(from) && !start.isAfter(to);
+    }
+}
@@ -0,0 +1,160 @@
+package ru.practicum.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import ru.practicum.StatsResponseDto;
+import ru.practicum.model.StatsHit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * LRU-кэш результатов /stats. Диапазон, закончившийся раньше now - closedAfter, считается закрытым
+ * и хранится без срока (до вытеснения или дозаписи хитов с попадающими в него timestamp),
+ * диапазоны, касающиеся текущего времени, живут openTtl. Размер ограничен суммой строк результатов maxRows.
+ * Дозапись хитов в закрытую часть времени увеличивает поколение кэша: загрузка, начатая до этого,
+ * отдается запросу, но не сохраняется.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class StatsCache {
+
+    final CacheProperties properties;
+    final Map<Key, CachedStats> entries;
+    final Counter hits;
+    final Counter misses;
+    final AtomicLong rows = new AtomicLong();
+    long generation;
+
+    public StatsCache(CacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = meterRegistry.counter("stats.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("stats.cache.requests", "result", "miss");
+        meterRegistry.gauge("stats.cache.size", entries, Map::size);
+        meterRegistry.gauge("stats.cache.rows", rows);
+    }
+
+    public CachedStats get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique, boolean approx,
+                           boolean group, Supplier<List<StatsResponseDto>> loader) {
+        LocalDateTime from = start.truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS);
+        if (!properties.isEnabled()) {
+            return toCached(loader.get(), from, to, false, System.nanoTime());
+        }
+        Key key = new Key(from, to, uris == null ? null : uris.stream().distinct().sorted().collect(Collectors.toList()),
+                unique, approx, group);
+        // Признак закрытости фиксируется до чтения поколения и запроса в БД: хиты, сохраненные позже,
+        // либо уже видны загрузке, либо увеличат поколение.
+        boolean closed = to.isBefore(LocalDateTime.now().minus(properties.getClosedAfter()));
+        long now = System.nanoTime();
+        long loadGeneration;
+        synchronized (entries) {
+            CachedStats cached = entries.get(key);
+            if (cached != null && !cached.isExpired(now)) {
+                hits.increment();
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        CachedStats loaded = toCached(loader.get(), from, to, closed, now + properties.getOpenTtl().toNanos());
+        long weight = weight(loaded);
+        synchronized (entries) {
+            if (loadGeneration != generation || weight > properties.getMaxRows()) {
+                return loaded;
+            }
+            CachedStats previous = entries.put(key, loaded);
+            rows.addAndGet(weight - (previous == null ? 0 : weight(previous)));
+            Iterator<CachedStats> eldest = entries.values().iterator();
+            while (rows.get() > properties.getMaxRows() && eldest.hasNext()) {
+                rows.addAndGet(-weight(eldest.next()));
+                eldest.remove();
+            }
+        }
+        return loaded;
+    }
+
+    public void invalidate(List<StatsHit> saved) {
+        if (!properties.isEnabled() || saved.isEmpty()) {
+            return;
+        }
+        LocalDateTime min = saved.get(0).getTimestamp();
+        LocalDateTime max = min;
+        for (StatsHit hit : saved) {
+            min = hit.getTimestamp().isBefore(min) ? hit.getTimestamp() : min;
+            max = hit.getTimestamp().isAfter(max) ? hit.getTimestamp() : max;
+        }
+        LocalDateTime from = min;
+        LocalDateTime to = max;
+        // Закрытый диапазон кончается раньше now - closedAfter, более поздние хиты его не затрагивают.
+        boolean closedTouched = from.isBefore(LocalDateTime.now().minus(properties.getClosedAfter()));
+        int removed = 0;
+        synchronized (entries) {
+            if (closedTouched) {
+                generation++;
+            }
+            Iterator<CachedStats> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedStats cached = iterator.next();
+                if (cached.isClosed() && cached.overlaps(from, to)) {
+                    rows.addAndGet(-weight(cached));
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.info("Сброшено закэшированных закрытых диапазонов: {} (дозапись хитов за {} - {})", removed, from, to);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+            rows.set(0);
+        }
+    }
+
+    // Пустой результат тоже занимает место.
+    static long weight(CachedStats cached) {
+        return Math.max(1, cached.getStats().size());
+    }
+
+    CachedStats toCached(List<StatsResponseDto> stats, LocalDateTime start, LocalDateTime end, boolean closed,
+                         long expiresAtNanos) {
+        StringBuilder content = new StringBuilder();
+        for (StatsResponseDto dto : stats) {
+            content.append(dto.getApp()).append('\t').append(dto.getUri()).append('\t').append(dto.getHits()).append('\n');
+        }
+        String etag = "\"" + DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+        return new CachedStats(Collections.unmodifiableList(stats), etag, start, end, closed, expiresAtNanos);
+    }
+
+    @Value
+    static class Key {
+        LocalDateTime start;
+        LocalDateTime end;
+        List<String> uris;
+        boolean unique;
+        boolean approx;
+        boolean group;
+    }
+}
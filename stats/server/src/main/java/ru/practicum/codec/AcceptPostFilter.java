@@ -0,0 +1,28 @@
+package ru.practicum.codec;
+
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Заголовок Accept-Post в каждом ответе сообщает клиентам, что тела запросов можно слать в двоичном формате.
+ */
+@Component
+public class AcceptPostFilter extends OncePerRequestFilter {
+
+    static final String ACCEPT_POST = "Accept-Post";
+    static final String FORMATS = MediaType.APPLICATION_JSON_VALUE + ", " + StatsBinaryHttpMessageConverter.MEDIA_TYPE;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        response.setHeader(ACCEPT_POST, FORMATS);
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.practicum.codec;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+import ru.practicum.StatsBinaryCodec;
+import ru.practicum.StatsHitDto;
+import ru.practicum.StatsResponseDto;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Чтение и запись StatsHitDto, List&lt;StatsHitDto&gt; и List&lt;StatsResponseDto&gt;
+ * в формате application/x-stats-binary. Регистрируется последним, поэтому без явного Accept ответ остается JSON.
+ */
+public class StatsBinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(StatsBinaryCodec.MEDIA_TYPE_VALUE);
+
+    public StatsBinaryHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return StatsHitDto.class == clazz || List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        ResolvableType resolved = ResolvableType.forType(type);
+        return (resolved.resolve() == StatsHitDto.class || isListOf(resolved, StatsHitDto.class)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (type == null) {
+            return StatsHitDto.class == clazz && canWrite(mediaType);
+        }
+        ResolvableType resolved = ResolvableType.forType(type);
+        return (resolved.resolve() == StatsHitDto.class || isListOf(resolved, StatsHitDto.class)
+                || isListOf(resolved, StatsResponseDto.class)) && canWrite(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        List<StatsHitDto> hits;
+        try {
+            hits = StatsBinaryCodec.decodeHits(StreamUtils.copyToByteArray(inputMessage.getBody()));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+        if (ResolvableType.forType(type).resolve() != StatsHitDto.class) {
+            return hits;
+        }
+        if (hits.size() != 1) {
+            throw new HttpMessageNotReadableException("Ожидался один хит, получено: " + hits.size(), inputMessage);
+        }
+        return hits.get(0);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] bytes;
+        if (value instanceof StatsHitDto) {
+            bytes = StatsBinaryCodec.encodeHits(List.of((StatsHitDto) value));
+        } else if (!((List<?>) value).isEmpty() && ((List<?>) value).get(0) instanceof StatsHitDto) {
+            bytes = StatsBinaryCodec.encodeHits((List<StatsHitDto>) value);
+        } else {
+            bytes = StatsBinaryCodec.encodeStats((List<StatsResponseDto>) value);
+        }
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+
+    static boolean isListOf(ResolvableType type, Class<?> element) {
+        return type.resolve() != null && List.class.isAssignableFrom(type.resolve())
+                && type.getGeneric(0).resolve() == element;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.practicum.controller;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.service.StatsServiceImpl;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+
+import static util.Constants.JSON_FORMAT_PATTERN_FOR_TIME;
+
+@RestController
+@RequestMapping("/admin/hits")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@AllArgsConstructor
+public class AdminHitsController {
+    final StatsServiceImpl statsServiceImpl;
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportHits(@DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "start") LocalDateTime start,
+                                                            @DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "end") LocalDateTime end) {
+        statsServiceImpl.checkRange(start, end);
+        StreamingResponseBody body = out -> statsServiceImpl.exportHits(start, end, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(HitArchive.FILE_NAME).build().toString())
+                .body(body);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Integer importHits(InputStream body) {
+        return statsServiceImpl.importHits(body);
+    }
+}
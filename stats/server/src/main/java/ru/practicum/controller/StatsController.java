@@ -1,36 +1,144 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.StatsBinaryCodec;
 import ru.practicum.StatsHitDto;
+import ru.practicum.StatsQueryDto;
 import ru.practicum.StatsResponseDto;
+import ru.practicum.cache.CacheProperties;
+import ru.practicum.cache.CachedStats;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.service.DeltaStats;
 import ru.practicum.service.StatsServiceImpl;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Positive;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import static util.Constants.JSON_FORMAT_PATTERN_FOR_TIME;
+import static util.Constants.STATS_CURSOR_HEADER;
 
 @Service
 @RestController
+@Validated
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @AllArgsConstructor
 public class StatsController {
     final StatsServiceImpl statsServiceImpl;
+    final ObjectMapper objectMapper;
+    final CacheProperties cacheProperties;
 
-    @GetMapping("/stats")
-    @ResponseStatus(HttpStatus.OK)
-    public List<StatsResponseDto> getStats(@DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "start") LocalDateTime start,
-                                           @DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "end") LocalDateTime end,
-                                           @RequestParam(required = false) List<String> uris,
-                                           @RequestParam(required = false, defaultValue = "false") Boolean unique) {
-        return statsServiceImpl.getStats(start, end, uris, unique);
+    @GetMapping(value = "/stats", produces = {MediaType.APPLICATION_JSON_VALUE, StatsBinaryCodec.MEDIA_TYPE_VALUE})
+    public ResponseEntity<List<StatsResponseDto>> getStats(@DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "start") LocalDateTime start,
+                                                           @DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "end") LocalDateTime end,
+                                                           @RequestParam(required = false) List<String> uris,
+                                                           @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                                           @RequestParam(required = false, defaultValue = "false") Boolean approx,
+                                                           @RequestParam(required = false, defaultValue = "false") Boolean group,
+                                                           @RequestParam(required = false, defaultValue = "false") Boolean delta,
+                                                           @RequestParam(required = false) String since,
+                                                           WebRequest request) {
+        if (delta || since != null) {
+            if (unique || approx || group) {
+                throw new BadRequestException("Дельта-запрос поддерживается только для unique=false без группировки");
+            }
+            DeltaStats deltaStats = statsServiceImpl.getDeltaStats(start, end, uris, since);
+            return ResponseEntity.ok()
+                    .header(STATS_CURSOR_HEADER, deltaStats.getCursor())
+                    .cacheControl(CacheControl.noStore())
+                    .body(deltaStats.getStats());
+        }
+        CachedStats cached = statsServiceImpl.getCachedStats(start, end, uris, unique, approx, group);
+        CacheControl cacheControl = CacheControl.maxAge(cached.isClosed()
+                ? cacheProperties.getClosedMaxAge() : cacheProperties.getOpenTtl());
+        if (request.checkNotModified(cached.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(cached.getEtag())
+                .cacheControl(cacheControl)
+                .body(cached.getStats());
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStats(@DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "start") LocalDateTime start,
+                                                             @DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "end") LocalDateTime end,
+                                                             @RequestParam(required = false) List<String> uris,
+                                                             @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                                             @RequestParam(required = false, defaultValue = "false") Boolean approx) {
+        statsServiceImpl.checkRange(start, end);
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writerFor(StatsResponseDto.class)
+                    .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .withRootValueSeparator("\n")
+                    .writeValues(out)) {
+                statsServiceImpl.streamStats(start, end, uris, unique, approx, dto -> {
+                    try {
+                        writer.write(dto);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            out.write('\n');
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping("/stats/top")
+    public List<StatsResponseDto> getTopStats(@DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "start") LocalDateTime start,
+                                              @DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "end") LocalDateTime end,
+                                              @RequestParam(required = false, defaultValue = "10") @Positive Integer k,
+                                              @RequestParam(required = false) String app) {
+        return statsServiceImpl.getTopStats(start, end, app, k);
+    }
+
+    @GetMapping("/stats/live")
+    public List<StatsResponseDto> getLiveStats(@RequestParam(required = false) List<String> uris,
+                                               @RequestParam(required = false, defaultValue = "PT1H") Duration window) {
+        return statsServiceImpl.getLiveStats(uris, window);
+    }
+
+    @GetMapping("/stats/uris")
+    public List<String> findUris(@RequestParam String prefix) {
+        return statsServiceImpl.findUris(prefix);
+    }
+
+    // HyperLogLog-скетчи уникальных ip по app: роутер шардов объединяет их для unique по uri с разных шардов.
+    @GetMapping("/stats/sketch")
+    public Map<String, byte[]> getUniqueSketches(@DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "start") LocalDateTime start,
+                                                 @DateTimeFormat(pattern = JSON_FORMAT_PATTERN_FOR_TIME) @RequestParam(value = "end") LocalDateTime end,
+                                                 @RequestParam(required = false) List<String> uris) {
+        return statsServiceImpl.getUniqueSketches(start, end, uris);
+    }
+
+    @PostMapping("/stats/batch")
+    public List<StatsResponseDto> getBatchStats(@RequestBody List<@Valid StatsQueryDto> queries) {
+        return statsServiceImpl.getBatchStats(queries);
     }
 
     @PostMapping("/hit")
@@ -38,4 +146,10 @@ public class StatsController {
     public StatsHitDto save(@RequestBody @Valid StatsHitDto statsHitDto) {
         return statsServiceImpl.save(statsHitDto);
     }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Integer saveAll(@RequestBody List<@Valid StatsHitDto> statsHitDtos) {
+        return statsServiceImpl.saveAll(statsHitDtos);
+    }
 }
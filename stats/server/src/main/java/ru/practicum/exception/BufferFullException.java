@@ -0,0 +1,8 @@
+package ru.practicum.exception;
+
+public class BufferFullException extends RuntimeException {
+
+    public BufferFullException(String message) {
+        super(message);
+    }
+}
@@ -2,20 +2,53 @@ package ru.practicum.exception;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import javax.validation.ConstraintViolationException;
 import java.util.Map;
 
 @RestControllerAdvice
 @Slf4j
 public class ErrorHandler {
 
+    // Тип ответа задан явно: ошибка потокового /stats (application/x-ndjson) тоже отдается как JSON.
     @ExceptionHandler(BadRequestException.class)
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public Map<String, String> handleWrongData(final BadRequestException e) {
+    public ResponseEntity<Map<String, String>> handleWrongData(final BadRequestException e) {
         log.error("Ошибка: " + e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(ConstraintViolationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> handleConstraintViolation(final ConstraintViolationException e) {
+        log.error("Ошибка валидации: " + e.getMessage());
+        return Map.of("error", e.getMessage());
+    }
+
+    @ExceptionHandler(BufferFullException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handleBufferFull(final BufferFullException e) {
+        log.warn("Перегрузка: " + e.getMessage());
+        return Map.of("error", e.getMessage());
+    }
+
+    @ExceptionHandler(ShardUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handleShardUnavailable(final ShardUnavailableException e) {
+        log.warn("Шард недоступен: " + e.getMessage());
+        return Map.of("error", e.getMessage());
+    }
+
+    @ExceptionHandler(WriteNotConfirmedException.class)
+    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+    public Map<String, String> handleWriteNotConfirmed(final WriteNotConfirmedException e) {
+        log.error("Ошибка записи: " + e.getMessage());
         return Map.of("error", e.getMessage());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,8 @@
+package ru.practicum.exception;
+
+public class WriteNotConfirmedException extends RuntimeException {
+
+    public WriteNotConfirmedException(String message) {
+        super(message);
+    }
+}
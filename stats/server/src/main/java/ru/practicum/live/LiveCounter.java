@@ -0,0 +1,72 @@
+package ru.practicum.live;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кольцо поминутных счетчиков одного (app, uri). Хиты текущей минуты копятся в полосатом LongAdder без блокировок;
+ * при переходе на новую минуту накопленное переносится в кольцо под блокировкой (раз в минуту на uri).
+ * Хит, пришедший в момент переноса, может быть учтен в соседней минуте - итог по окну при этом не теряется.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class LiveCounter {
+
+    final AtomicIntegerArray minutes;
+    final LongAdder current = new LongAdder();
+    volatile long currentMinute;
+
+    LiveCounter(int size, long minute) {
+        this.minutes = new AtomicIntegerArray(size);
+        this.currentMinute = minute;
+    }
+
+    void add(long minute, long count) {
+        if (minute == currentMinute) {
+            current.add(count);
+            return;
+        }
+        synchronized (this) {
+            if (minute > currentMinute) {
+                rotate(minute);
+                current.add(count);
+            } else if (minute == currentMinute) {
+                current.add(count);
+            } else if (currentMinute - minute < minutes.length()) {
+                minutes.addAndGet(index(minute), (int) count);
+            }
+        }
+    }
+
+    long sum(long fromMinute, long toMinute) {
+        long last = currentMinute;
+        long first = Math.max(fromMinute, last - minutes.length() + 1);
+        long sum = 0;
+        for (long minute = first; minute <= Math.min(toMinute, last); minute++) {
+            sum += minutes.get(index(minute));
+        }
+        if (last >= fromMinute && last <= toMinute) {
+            sum += current.sum();
+        }
+        return sum;
+    }
+
+    long lastMinute() {
+        return currentMinute;
+    }
+
+    void rotate(long minute) {
+        minutes.addAndGet(index(currentMinute), (int) current.sumThenReset());
+        long clear = Math.min(minute - currentMinute, minutes.length());
+        for (long i = 1; i <= clear; i++) {
+            minutes.set(index(currentMinute + i), 0);
+        }
+        currentMinute = minute;
+    }
+
+    int index(long minute) {
+        return (int) Math.floorMod(minute, (long) minutes.length());
+    }
+}
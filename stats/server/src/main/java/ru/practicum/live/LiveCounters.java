@@ -0,0 +1,143 @@
+package ru.practicum.live;
+
+import lombok.AccessLevel;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsResponse;
+import ru.practicum.repository.StatsRepository;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Счетчики просмотров за последние минуты/часы в памяти: /stats/live не обращается к БД.
+ * Число (app, uri) ограничено stats.live.max-uris, при переполнении вытесняются давно не посещавшиеся.
+ * При старте кольца заполняются из последних stats.live.max-window хранилища.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class LiveCounters {
+
+    final LiveProperties properties;
+    final StatsRepository statsRepository;
+    final Map<Key, LiveCounter> counters = new ConcurrentHashMap<>();
+    final Set<String> apps = ConcurrentHashMap.newKeySet();
+    final int size;
+
+    public LiveCounters(LiveProperties properties, StatsRepository statsRepository) {
+        this.properties = properties;
+        this.statsRepository = statsRepository;
+        this.size = Math.toIntExact(properties.getMaxWindow().toMinutes());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    @PostConstruct
+    void rebuild() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        statsRepository.forEachMinuteCount(LocalDateTime.now().minus(properties.getMaxWindow()),
+                count -> add(count.getApp(), count.getUri(), Math.min(toMinute(count.getMinute()), nowMinute()),
+                        count.getHits()));
+        evictCold();
+        log.info("Счетчики live восстановлены: uri {}, за {} мс", counters.size(), System.currentTimeMillis() - started);
+    }
+
+    public void record(List<StatsHit> hits) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (StatsHit hit : hits) {
+            add(hit.getApp(), hit.getUri(), Math.min(toMinute(hit.getTimestamp()), nowMinute()), 1);
+        }
+        if (counters.size() > properties.getMaxUris()) {
+            evictCold();
+        }
+    }
+
+    public List<StatsResponse> getStats(List<String> uris, Duration window) {
+        long to = nowMinute();
+        long from = to - Math.max(1, (window.getSeconds() + 59) / 60) + 1;
+        List<StatsResponse> stats = new ArrayList<>();
+        if (uris == null) {
+            counters.forEach((key, counter) -> addStats(stats, key, counter, from, to));
+        } else {
+            for (String uri : uris) {
+                for (String app : apps) {
+                    Key key = new Key(app, uri);
+                    LiveCounter counter = counters.get(key);
+                    if (counter != null) {
+                        addStats(stats, key, counter, from, to);
+                    }
+                }
+            }
+        }
+        stats.sort(Comparator.comparing(StatsResponse::getHits).reversed());
+        return stats;
+    }
+
+    // Ежеминутно удаляются счетчики без хитов за все окно и, при переполнении, самые холодные.
+    @Scheduled(fixedDelay = 60000)
+    void evictCold() {
+        long expired = nowMinute() - size;
+        counters.values().removeIf(counter -> counter.lastMinute() <= expired);
+        if (counters.size() <= properties.getMaxUris()) {
+            return;
+        }
+        // Вытесняется с запасом в 10%, чтобы не сортировать все счетчики на каждом новом uri.
+        List<Key> cold = counters.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastMinute()))
+                .limit(counters.size() - properties.getMaxUris() * 9L / 10)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        cold.forEach(counters::remove);
+        log.info("Вытеснено холодных uri из счетчиков live: {}", cold.size());
+    }
+
+    void add(String app, String uri, long minute, long count) {
+        if (nowMinute() - minute >= size) {
+            return;
+        }
+        apps.add(app);
+        counters.computeIfAbsent(new Key(app, uri), key -> new LiveCounter(size, minute)).add(minute, count);
+    }
+
+    void addStats(List<StatsResponse> stats, Key key, LiveCounter counter, long from, long to) {
+        long hits = counter.sum(from, to);
+        if (hits > 0) {
+            stats.add(new StatsResponse(key.app, key.uri, hits));
+        }
+    }
+
+    static long nowMinute() {
+        return toMinute(LocalDateTime.now());
+    }
+
+    static long toMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    @Value
+    static class Key {
+        String app;
+        String uri;
+    }
+}
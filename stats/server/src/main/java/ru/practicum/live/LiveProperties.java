@@ -0,0 +1,22 @@
+package ru.practicum.live;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.live")
+public class LiveProperties {
+
+    boolean enabled = true;
+
+    Duration maxWindow = Duration.ofDays(1);
+
+    int maxUris = 10000;
+}
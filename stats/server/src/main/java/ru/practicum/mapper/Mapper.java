@@ -1,8 +1,10 @@
 package ru.practicum.mapper;
 
 import ru.practicum.StatsHitDto;
+import ru.practicum.StatsQueryDto;
 import ru.practicum.StatsResponseDto;
 import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsQuery;
 import ru.practicum.model.StatsResponse;
 
 public class Mapper {
@@ -24,6 +26,11 @@ public class Mapper {
         return statsHit;
     }
 
+    public static StatsQuery toQuery(StatsQueryDto statsQueryDto) {
+        return new StatsQuery(statsQueryDto.getUri(), statsQueryDto.getStart(), statsQueryDto.getEnd(),
+                statsQueryDto.isUnique());
+    }
+
     public static StatsResponseDto toStatsDto(StatsResponse stats) {
         StatsResponseDto statsResponseDto = new StatsResponseDto();
         statsResponseDto.setApp(stats.getApp());
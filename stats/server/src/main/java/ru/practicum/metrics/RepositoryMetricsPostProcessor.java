@@ -0,0 +1,52 @@
+package ru.practicum.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import ru.practicum.repository.StatsRepository;
+
+/**
+ * Оборачивает хранилище статистики таймером stats.repository{method, exception}: время каждого метода
+ * StatsRepository, для jdbc - фактически время запросов к БД. Для потоковых forEach* в него входит и запись ответа.
+ */
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+
+    // Реестр берется лениво: BeanPostProcessor создается раньше остальных бинов.
+    final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof StatsRepository)) {
+            return bean;
+        }
+        ProxyFactory factory = new ProxyFactory();
+        factory.setTarget(bean);
+        factory.setInterfaces(StatsRepository.class);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            Timer.Sample sample = Timer.start(meterRegistry.getObject());
+            String exception = "none";
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                exception = e.getClass().getSimpleName();
+                throw e;
+            } finally {
+                sample.stop(Timer.builder("stats.repository")
+                        .tag("method", invocation.getMethod().getName())
+                        .tag("exception", exception)
+                        .register(meterRegistry.getObject()));
+            }
+        });
+        return factory.getProxy();
+    }
+}
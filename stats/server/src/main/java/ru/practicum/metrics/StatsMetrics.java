@@ -0,0 +1,64 @@
+package ru.practicum.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.StatsHit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Метрики приема и чтения статистики: stats.hits.ingested{app} - принятые хиты,
+ * stats.query.rows{query} - строки ответа, stats.query.scanned - записи, просмотренные хранилищем
+ * (только там, где чтение идет в приложении, а не в БД).
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class StatsMetrics {
+
+    final MeterRegistry meterRegistry;
+    final Map<String, Counter> ingested = new ConcurrentHashMap<>();
+    final Map<String, DistributionSummary> returned = new ConcurrentHashMap<>();
+    final DistributionSummary scanned;
+
+    public StatsMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.scanned = DistributionSummary.builder("stats.query.scanned")
+                .baseUnit("rows")
+                .register(meterRegistry);
+    }
+
+    public void ingested(List<StatsHit> hits) {
+        hits.stream()
+                .collect(Collectors.groupingBy(StatsHit::getApp, Collectors.counting()))
+                .forEach((app, count) -> ingested.computeIfAbsent(app, this::ingestedCounter).increment(count));
+    }
+
+    public <T> List<T> returned(String query, List<T> rows) {
+        returned.computeIfAbsent(query, this::returnedSummary).record(rows.size());
+        return rows;
+    }
+
+    public void scanned(long rows) {
+        scanned.record(rows);
+    }
+
+    Counter ingestedCounter(String app) {
+        return Counter.builder("stats.hits.ingested")
+                .tag("app", app)
+                .register(meterRegistry);
+    }
+
+    DistributionSummary returnedSummary(String query) {
+        return DistributionSummary.builder("stats.query.rows")
+                .tag("query", query)
+                .baseUnit("rows")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.metrics;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTagsContributor;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Добавляет к http.server.requests теги unique (true/false) и uris (present/absent) для запросов /stats*;
+ * у остальных запросов значение none, чтобы набор тегов метрики был одинаковым.
+ */
+@Component
+public class StatsRequestTagsContributor implements WebMvcTagsContributor {
+
+    static final String NONE = "none";
+
+    @Override
+    public Iterable<Tag> getTags(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                 Throwable exception) {
+        if (!request.getRequestURI().startsWith("/stats")) {
+            return Tags.of("unique", NONE, "uris", NONE);
+        }
+        return Tags.of("unique", String.valueOf(Boolean.parseBoolean(request.getParameter("unique"))),
+                "uris", request.getParameter("uris") != null ? "present" : "absent");
+    }
+
+    @Override
+    public Iterable<Tag> getLongRequestTags(HttpServletRequest request, Object handler) {
+        return Tags.empty();
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class BucketKey implements Comparable<BucketKey> {
+
+    static final Comparator<BucketKey> ORDER = Comparator.comparingInt(BucketKey::getAppId)
+            .thenComparingInt(BucketKey::getUriId)
+            .thenComparing(BucketKey::getBucket);
+
+    int appId;
+    int uriId;
+    LocalDateTime bucket;
+
+    @Override
+    public int compareTo(BucketKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MinuteCount {
+
+    String app;
+
+    String uri;
+
+    LocalDateTime minute;
+
+    long hits;
+}
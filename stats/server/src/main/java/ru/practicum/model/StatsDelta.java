@@ -0,0 +1,20 @@
+package ru.practicum.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+/**
+ * Ответ дельта-запроса: статистика (полная при первом запросе или приращения после прошлой позиции)
+ * и позиция хранилища, до которой она посчитана. Формат позиции свой у каждого хранилища.
+ */
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StatsDelta {
+
+    List<StatsResponse> stats;
+
+    String position;
+}
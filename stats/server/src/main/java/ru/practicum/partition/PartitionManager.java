@@ -0,0 +1,143 @@
+package ru.practicum.partition;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.cache.StatsCache;
+import ru.practicum.repository.HitVisitorRepository;
+import ru.practicum.sketch.SketchProperties;
+import ru.practicum.sketch.TopProperties;
+import util.TimeBuckets;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Ведет секции таблицы hits по полю datetime: заранее создает stats.partition.premake будущих секций
+ * и удаляет секции старше stats.partition.retention целиком вместо DELETE.
+ * Хиты вне созданных секций попадают в hits_default.
+ * Граница хранения выравнивается по самому крупному из интервала секций и бакетов производных таблиц
+ * (минутные счетчики, HLL, top-k, битмапы посетителей), и все они обрезаются по ней в одной транзакции:
+ * запрос за старый период получает одинаковый ответ, каким бы путем он ни обслуживался.
+ * Поэтому размеры бакетов должны делить интервал секций или сутки.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PartitionManager {
+
+    static final String PARTITION_PREFIX = "hits_p";
+    static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
+    static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+    static final List<String> DERIVED_TABLES = List.of("hits_minute", "hits_hll", "hits_top", "hits_visitors");
+    static final String LIST_PARTITIONS = "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'hits'::regclass AND c.relname LIKE 'hits\\_p%'";
+
+    final PartitionProperties properties;
+    final JdbcTemplate jdbcTemplate;
+    final TransactionTemplate transactionTemplate;
+    final StatsCache statsCache;
+    final SketchProperties sketchProperties;
+    final TopProperties topProperties;
+
+    public PartitionManager(PartitionProperties properties, JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate, StatsCache statsCache,
+                            SketchProperties sketchProperties, TopProperties topProperties) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.statsCache = statsCache;
+        this.sketchProperties = sketchProperties;
+        this.topProperties = topProperties;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${stats.partition.check-interval:PT1H}")
+    public void maintain() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            createPartitions(now);
+            if (!properties.getRetention().isZero()) {
+                dropExpired(retentionCutoff(now.minus(properties.getRetention())));
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка обслуживания секций таблицы hits: {}", e.getMessage());
+        }
+    }
+
+    void createPartitions(LocalDateTime now) {
+        LocalDateTime from = TimeBuckets.floor(now, properties.getInterval());
+        for (int i = 0; i <= properties.getPremake(); i++) {
+            LocalDateTime to = from.plus(properties.getInterval());
+            createPartition(from, to);
+            from = to;
+        }
+    }
+
+    void createPartition(LocalDateTime from, LocalDateTime to) {
+        String name = PARTITION_PREFIX + from.format(NAME_FORMAT);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext('hits_partitions'))", Object.class);
+            Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name);
+            if (Boolean.TRUE.equals(exists)) {
+                return;
+            }
+            // Хиты этого интервала могли уже попасть в hits_default: переносим их в новую секцию до ее подключения.
+            jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE hits INCLUDING DEFAULTS)");
+            jdbcTemplate.update("WITH moved AS (DELETE FROM hits_default WHERE datetime >= ? AND datetime < ? RETURNING *) " +
+                    "INSERT INTO " + name + " SELECT * FROM moved", Timestamp.valueOf(from), Timestamp.valueOf(to));
+            jdbcTemplate.execute("ALTER TABLE hits ATTACH PARTITION " + name + " FOR VALUES FROM ('"
+                    + from.format(BOUND_FORMAT) + "') TO ('" + to.format(BOUND_FORMAT) + "')");
+            log.info("Создана секция {} [{}, {})", name, from, to);
+        });
+    }
+
+    LocalDateTime retentionCutoff(LocalDateTime cutoff) {
+        Duration step = Stream.of(properties.getInterval(), sketchProperties.getBucket(), topProperties.getBucket(),
+                        HitVisitorRepository.DAY)
+                .max(Duration::compareTo)
+                .orElseThrow();
+        return TimeBuckets.floor(cutoff, step);
+    }
+
+    void dropExpired(LocalDateTime cutoff) {
+        List<String[]> partitions = jdbcTemplate.query(LIST_PARTITIONS,
+                (rs, rowNum) -> new String[]{rs.getString(1), rs.getString(2)});
+        Timestamp bound = Timestamp.valueOf(cutoff);
+        int[] removed = new int[2];
+        transactionTemplate.executeWithoutResult(status -> {
+            for (String[] partition : partitions) {
+                Matcher matcher = UPPER_BOUND.matcher(partition[1]);
+                if (matcher.find() && !LocalDateTime.parse(matcher.group(1), BOUND_FORMAT).isAfter(cutoff)) {
+                    jdbcTemplate.execute("ALTER TABLE hits DETACH PARTITION " + partition[0]);
+                    jdbcTemplate.execute("DROP TABLE " + partition[0]);
+                    log.info("Удалена устаревшая секция {}", partition[0]);
+                    removed[0]++;
+                }
+            }
+            removed[1] = jdbcTemplate.update("DELETE FROM hits_default WHERE datetime < ?", bound);
+            for (String table : DERIVED_TABLES) {
+                removed[1] += jdbcTemplate.update("DELETE FROM " + table + " WHERE bucket < ?", bound);
+            }
+        });
+        if (removed[0] > 0 || removed[1] > 0) {
+            log.info("Данные до {} удалены: секций {}, строк {}", cutoff, removed[0], removed[1]);
+            statsCache.clear();
+        }
+    }
+}
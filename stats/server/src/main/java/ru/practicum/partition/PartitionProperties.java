@@ -0,0 +1,26 @@
+package ru.practicum.partition;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.partition")
+public class PartitionProperties {
+
+    boolean enabled = true;
+
+    Duration interval = Duration.ofDays(1);
+
+    int premake = 7;
+
+    Duration retention = Duration.ZERO;
+
+    Duration checkInterval = Duration.ofHours(1);
+}
@@ -0,0 +1,139 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.model.MinuteCount;
+import ru.practicum.model.StatsDelta;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsQuery;
+import ru.practicum.model.StatsResponse;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Repository
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class DatabaseStatsRepository implements StatsRepository {
+
+    final HitDictionary hitDictionary;
+    final HitBatchRepository hitBatchRepository;
+    final HitRollupRepository hitRollupRepository;
+    final HitSketchRepository hitSketchRepository;
+    final HitQueryRepository hitQueryRepository;
+    final HitTopRepository hitTopRepository;
+    final HitVisitorRepository hitVisitorRepository;
+
+    @Override
+    public int saveAll(List<StatsHit> hits) {
+        hitDictionary.registerAll(hits);
+        hitVisitorRepository.registerAll(hits);
+        return hitBatchRepository.saveAll(hits);
+    }
+
+    @Override
+    public int importAll(List<StatsHit> hits) {
+        hitDictionary.registerAll(hits);
+        hitVisitorRepository.registerAll(hits);
+        return hitBatchRepository.copyAll(hits);
+    }
+
+    @Override
+    public List<StatsResponse> findStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return hitRollupRepository.findStats(start, end, uris);
+    }
+
+    @Override
+    public List<StatsResponse> findUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (hitVisitorRepository.isEnabled()) {
+            return hitVisitorRepository.findUniqueStats(start, end, uris);
+        }
+        List<StatsResponse> stats = new ArrayList<>();
+        hitQueryRepository.forEachUniqueStats(start, end, uris, stats::add);
+        return stats;
+    }
+
+    // Позиция читается в отдельной короткой транзакции, запросы дельты идут уже без блокировки записи.
+    @Override
+    public StatsDelta findStatsDelta(LocalDateTime start, LocalDateTime end, List<String> uris, String since) {
+        long from = since == null ? 0 : parsePosition(since);
+        long position = hitQueryRepository.readHighWaterMark();
+        List<StatsResponse> stats = since == null ? hitQueryRepository.findStatsUpTo(start, end, uris, position)
+                : hitQueryRepository.findStatsDelta(start, end, uris, from, position);
+        return new StatsDelta(stats, String.valueOf(position));
+    }
+
+    @Override
+    public List<StatsResponse> findApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return hitSketchRepository.findApproxUniqueStats(start, end, uris);
+    }
+
+    @Override
+    public Map<String, HyperLogLog> findUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return hitSketchRepository.findAppSketches(start, end, uris);
+    }
+
+    @Override
+    public List<String> findUrisByPrefix(String prefix) {
+        return hitDictionary.findUrisByPrefix(prefix);
+    }
+
+    @Override
+    public List<StatsResponse> findUniqueGroupedStats(LocalDateTime start, LocalDateTime end,
+                                                      Map<String, List<String>> groups) {
+        return hitQueryRepository.findUniqueGroupedStats(start, end, groups);
+    }
+
+    @Override
+    public List<StatsResponse> findTopStats(LocalDateTime start, LocalDateTime end, String app, int k) {
+        return hitTopRepository.findTopStats(start, end, app, k);
+    }
+
+    @Override
+    public List<StatsResponse> findBatchStats(List<StatsQuery> queries) {
+        return hitQueryRepository.findBatchStats(queries);
+    }
+
+    @Override
+    public void forEachMinuteCount(LocalDateTime since, Consumer<MinuteCount> consumer) {
+        hitRollupRepository.forEachMinuteCount(since, consumer);
+    }
+
+    // Курсор Postgres (fetch size) работает только внутри транзакции.
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             Consumer<StatsResponse> consumer) {
+        if (unique && hitVisitorRepository.isEnabled()) {
+            hitVisitorRepository.findUniqueStats(start, end, uris).forEach(consumer);
+        } else if (unique) {
+            hitQueryRepository.forEachUniqueStats(start, end, uris, consumer);
+        } else {
+            hitRollupRepository.forEachStats(start, end, uris, consumer);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachHit(LocalDateTime start, LocalDateTime end, Consumer<StatsHit> consumer) {
+        hitQueryRepository.forEachHit(start, end, consumer);
+    }
+
+    static long parsePosition(String position) {
+        try {
+            return Long.parseLong(position);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Курсор не подходит для этого хранилища");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.model.StatsHit;
+import ru.practicum.sketch.SketchProperties;
+import ru.practicum.sketch.TopProperties;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.List;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitBatchRepository {
+
+    static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, datetime) VALUES (?, ?, ?::inet, ?)";
+    static final String COPY_HITS = "COPY hits (app_id, uri_id, ip, datetime) FROM STDIN";
+    // Разделяемая блокировка писателей до конца транзакции, см. HitQueryRepository.readHighWaterMark.
+    static final long WRITE_LOCK = 0x45574D48L;
+    static final String LOCK_WRITE = "SELECT pg_advisory_xact_lock_shared(" + WRITE_LOCK + ")";
+
+    final JdbcTemplate jdbcTemplate;
+    final HitDictionary hitDictionary;
+    final HitRollupRepository hitRollupRepository;
+    final HitSketchRepository hitSketchRepository;
+    final SketchProperties sketchProperties;
+    final HitTopRepository hitTopRepository;
+    final TopProperties topProperties;
+    final HitVisitorRepository hitVisitorRepository;
+    final int batchSize;
+
+    public HitBatchRepository(JdbcTemplate jdbcTemplate, HitDictionary hitDictionary, HitRollupRepository hitRollupRepository,
+                              HitSketchRepository hitSketchRepository, SketchProperties sketchProperties,
+                              HitTopRepository hitTopRepository, TopProperties topProperties,
+                              HitVisitorRepository hitVisitorRepository,
+                              @Value("${stats.batch.size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hitDictionary = hitDictionary;
+        this.hitRollupRepository = hitRollupRepository;
+        this.hitSketchRepository = hitSketchRepository;
+        this.sketchProperties = sketchProperties;
+        this.hitTopRepository = hitTopRepository;
+        this.topProperties = topProperties;
+        this.hitVisitorRepository = hitVisitorRepository;
+        this.batchSize = batchSize;
+    }
+
+    @Transactional
+    public int saveAll(List<StatsHit> hits) {
+        if (hits.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.execute(LOCK_WRITE);
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hitDictionary.appId(hit.getApp()));
+            ps.setInt(2, hitDictionary.uriId(hit.getUri()));
+            ps.setString(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+        updateAggregates(hits);
+        return hits.size();
+    }
+
+    /**
+     * Загрузка через COPY (текстовый формат, строки без экранирования: ip уже проверены, остальное - числа и время);
+     * минутные счетчики и сводки обновляются так же, как при обычном сохранении.
+     */
+    @Transactional
+    public int copyAll(List<StatsHit> hits) {
+        if (hits.isEmpty()) {
+            return 0;
+        }
+        StringBuilder rows = new StringBuilder(hits.size() * 64);
+        for (StatsHit hit : hits) {
+            rows.append(hitDictionary.appId(hit.getApp())).append('\t')
+                    .append(hitDictionary.uriId(hit.getUri())).append('\t')
+                    .append(hit.getIp()).append('\t')
+                    .append(Timestamp.valueOf(hit.getTimestamp())).append('\n');
+        }
+        jdbcTemplate.execute(LOCK_WRITE);
+        Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn(COPY_HITS, new StringReader(rows.toString()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        updateAggregates(hits);
+        return Math.toIntExact(copied);
+    }
+
+    void updateAggregates(List<StatsHit> hits) {
+        hitRollupRepository.increment(hits);
+        if (sketchProperties.isEnabled()) {
+            hitSketchRepository.update(hits);
+        }
+        if (topProperties.isEnabled()) {
+            hitTopRepository.update(hits);
+        }
+        hitVisitorRepository.update(hits);
+    }
+}
@@ -0,0 +1,182 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsResponse;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * Словари приложений и uri (таблицы apps и uris) с двусторонним кэшем в памяти.
+ * Хиты, агрегаты и скетчи хранят только целочисленные id, строки восстанавливаются при выдаче результата.
+ * Значения, которых нет в БД (запросы по uri без хитов), запоминаются на MISS_TTL: строку мог добавить
+ * другой экземпляр сервера, поэтому промах не считается окончательным.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitDictionary {
+
+    static final long MISS_TTL_NANOS = Duration.ofSeconds(1).toNanos();
+    static final int MAX_MISSES = 10000;
+
+    final JdbcTemplate jdbcTemplate;
+    final Table apps = new Table("apps", "name");
+    final Table uris = new Table("uris", "uri");
+
+    public HitDictionary(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void load() {
+        for (Table table : List.of(apps, uris)) {
+            jdbcTemplate.query("SELECT id, " + table.column + " FROM " + table.name,
+                    rs -> {
+                        table.put(rs.getString(2), rs.getInt(1));
+                    });
+        }
+        log.info("Загружены словари: приложений {}, uri {}", apps.ids.size(), uris.ids.size());
+    }
+
+    // Вызывается вне транзакции записи хитов, чтобы откат пачки не оставил в кэше id несуществующих строк.
+    public void registerAll(List<StatsHit> hits) {
+        for (StatsHit hit : hits) {
+            appId(hit.getApp());
+            uriId(hit.getUri());
+        }
+    }
+
+    public int appId(String app) {
+        return getOrCreate(apps, app);
+    }
+
+    public int uriId(String uri) {
+        return getOrCreate(uris, uri);
+    }
+
+    // Словарь uri загружается целиком при старте и пополняется при записи, поэтому префиксный поиск не обращается к БД.
+    public List<String> findUrisByPrefix(String prefix) {
+        return new ArrayList<>(uris.ids.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet());
+    }
+
+    public Integer findAppId(String value) {
+        return find(apps, value);
+    }
+
+    public Integer findUriId(String value) {
+        return find(uris, value);
+    }
+
+    // Все неизвестные uri разрешаются одним запросом.
+    public List<Integer> findUriIds(List<String> values) {
+        resolve(uris, values);
+        return values.stream()
+                .map(uris.ids::get)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    public StatsResponse toResponse(int appId, int uriId, long hits) {
+        return new StatsResponse(app(appId), uri(uriId), hits);
+    }
+
+    public String app(int id) {
+        return value(apps, id);
+    }
+
+    public String uri(int id) {
+        return value(uris, id);
+    }
+
+    int getOrCreate(Table table, String value) {
+        Integer id = table.ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        jdbcTemplate.update("INSERT INTO " + table.name + " (" + table.column + ") VALUES (?) " +
+                "ON CONFLICT (" + table.column + ") DO NOTHING", value);
+        table.misses.remove(value);
+        return find(table, value);
+    }
+
+    Integer find(Table table, String value) {
+        resolve(table, List.of(value));
+        return table.ids.get(value);
+    }
+
+    void resolve(Table table, Collection<String> values) {
+        long now = System.nanoTime();
+        String[] unknown = values.stream()
+                .filter(value -> !table.ids.containsKey(value))
+                .filter(value -> {
+                    Long expiresAt = table.misses.get(value);
+                    return expiresAt == null || expiresAt - now <= 0;
+                })
+                .distinct()
+                .toArray(String[]::new);
+        if (unknown.length == 0) {
+            return;
+        }
+        jdbcTemplate.query("SELECT id, " + table.column + " FROM " + table.name + " WHERE " + table.column +
+                " = ANY(?)", rs -> {
+                    table.put(rs.getString(2), rs.getInt(1));
+                }, (Object) unknown);
+        if (table.misses.size() >= MAX_MISSES) {
+            table.misses.clear();
+        }
+        for (String value : unknown) {
+            if (!table.ids.containsKey(value)) {
+                table.misses.put(value, now + MISS_TTL_NANOS);
+            }
+        }
+    }
+
+    String value(Table table, int id) {
+        String value = table.values.get(id);
+        if (value == null) {
+            value = jdbcTemplate.queryForObject("SELECT " + table.column + " FROM " + table.name +
+                    " WHERE id = ?", String.class, id);
+            table.put(value, id);
+        }
+        return value;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    static class Table {
+        String name;
+        String column;
+        NavigableMap<String, Integer> ids = new ConcurrentSkipListMap<>();
+        Map<Integer, String> values = new ConcurrentHashMap<>();
+        // значения, которых нет в БД, и момент, до которого это считается верным
+        Map<String, Long> misses = new ConcurrentHashMap<>();
+
+        Table(String name, String column) {
+            this.name = name;
+            this.column = column;
+        }
+
+        void put(String value, int id) {
+            ids.put(value, id);
+            values.put(id, value);
+            misses.remove(value);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsQuery;
+import ru.practicum.model.StatsResponse;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitQueryRepository {
+
+    final NamedParameterJdbcTemplate namedJdbcTemplate;
+    final HitDictionary hitDictionary;
+    final HitRollupRepository hitRollupRepository;
+
+    public void forEachUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                   Consumer<StatsResponse> consumer) {
+        List<Integer> uriIds = uris != null ? hitDictionary.findUriIds(uris) : null;
+        if (uriIds != null && uriIds.isEmpty()) {
+            return;
+        }
+        String sql = "SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM hits " +
+                "WHERE datetime BETWEEN :start AND :end " +
+                (uriIds != null ? "AND uri_id IN (:uriIds) " : "") +
+                "GROUP BY app_id, uri_id ORDER BY hits DESC";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("uriIds", uriIds);
+        namedJdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                consumer.accept(hitDictionary.toResponse(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits"))));
+    }
+
+    /**
+     * Позиция для дельта-запросов - максимальный id хита. Исключительная блокировка ждет завершения
+     * транзакций записи (они берут разделяемую): все хиты с id до позиции уже видны, а новые получат id больше.
+     * Транзакция своя и короткая: запись ждет только чтения MAX(id), а не самого запроса дельты.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public long readHighWaterMark() {
+        namedJdbcTemplate.getJdbcTemplate().execute("SELECT pg_advisory_xact_lock(" + HitBatchRepository.WRITE_LOCK + ")");
+        Long max = namedJdbcTemplate.getJdbcTemplate().queryForObject("SELECT MAX(id) FROM hits", Long.class);
+        return max == null ? 0 : max;
+    }
+
+    /**
+     * Счетчики хитов с id до position: минутные счетчики и хвост хитов после position читаются из одного снимка
+     * (REPEATABLE READ), хвост вычитается. Хиты до position зафиксированы раньше снимка, поэтому видны полностью.
+     */
+    @Transactional(isolation = Isolation.REPEATABLE_READ, readOnly = true)
+    public List<StatsResponse> findStatsUpTo(LocalDateTime start, LocalDateTime end, List<String> uris, long position) {
+        Map<List<String>, StatsResponse> stats = new LinkedHashMap<>();
+        for (StatsResponse response : hitRollupRepository.findStats(start, end, uris)) {
+            stats.put(List.of(response.getApp(), response.getUri()), response);
+        }
+        for (StatsResponse tail : findStatsDelta(start, end, uris, position, Long.MAX_VALUE)) {
+            StatsResponse response = stats.get(List.of(tail.getApp(), tail.getUri()));
+            if (response != null) {
+                response.setHits(response.getHits() - tail.getHits());
+            }
+        }
+        return stats.values().stream()
+                .filter(response -> response.getHits() > 0)
+                .sorted(Comparator.comparing(StatsResponse::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    // Диапазон id читается по первичному ключу (id, datetime) каждой секции - только хвост таблицы.
+    public List<StatsResponse> findStatsDelta(LocalDateTime start, LocalDateTime end, List<String> uris, long since,
+                                              long until) {
+        List<Integer> uriIds = uris != null ? hitDictionary.findUriIds(uris) : null;
+        if (since >= until || uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        String sql = "SELECT app_id, uri_id, COUNT(*) AS hits FROM hits " +
+                "WHERE id > :since AND id <= :until AND datetime BETWEEN :start AND :end " +
+                (uriIds != null ? "AND uri_id IN (:uriIds) " : "") +
+                "GROUP BY app_id, uri_id ORDER BY hits DESC";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("since", since)
+                .addValue("until", until)
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("uriIds", uriIds);
+        return namedJdbcTemplate.query(sql, params,
+                (rs, rowNum) -> hitDictionary.toResponse(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    // Порядок по времени дает маленькие разности timestamp в архиве выгрузки.
+    public void forEachHit(LocalDateTime start, LocalDateTime end, Consumer<StatsHit> consumer) {
+        String sql = "SELECT app_id, uri_id, host(ip) AS ip, datetime FROM hits " +
+                "WHERE datetime BETWEEN ? AND ? ORDER BY datetime";
+        namedJdbcTemplate.getJdbcTemplate().query(sql, (RowCallbackHandler) rs ->
+                        consumer.accept(new StatsHit(null, hitDictionary.app(rs.getInt("app_id")),
+                                hitDictionary.uri(rs.getInt("uri_id")), rs.getString("ip"),
+                                rs.getTimestamp("datetime").toLocalDateTime())),
+                Timestamp.valueOf(start), Timestamp.valueOf(end));
+    }
+
+    // Uri может входить в несколько групп: соединение с таблицей (uri_id, grp) учитывает его в каждой.
+    public List<StatsResponse> findUniqueGroupedStats(LocalDateTime start, LocalDateTime end,
+                                                      Map<String, List<String>> groups) {
+        List<String> names = new ArrayList<>(groups.keySet());
+        StringBuilder values = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        for (int grp = 0; grp < names.size(); grp++) {
+            for (Integer uriId : hitDictionary.findUriIds(groups.get(names.get(grp)))) {
+                values.append(values.length() == 0 ? "" : ", ").append("(?::int, ?::int)");
+                args.add(uriId);
+                args.add(grp);
+            }
+        }
+        if (args.isEmpty()) {
+            return List.of();
+        }
+        args.add(Timestamp.valueOf(start));
+        args.add(Timestamp.valueOf(end));
+        String sql = "SELECT h.app_id, g.grp, COUNT(DISTINCT h.ip) AS hits " +
+                "FROM (VALUES " + values + ") AS g (uri_id, grp) " +
+                "JOIN hits h ON h.uri_id = g.uri_id " +
+                "WHERE h.datetime BETWEEN ? AND ? " +
+                "GROUP BY h.app_id, g.grp ORDER BY hits DESC";
+        return namedJdbcTemplate.getJdbcTemplate().query(sql,
+                (rs, rowNum) -> new StatsResponse(hitDictionary.app(rs.getInt("app_id")), names.get(rs.getInt("grp")),
+                        rs.getLong("hits")),
+                args.toArray());
+    }
+
+    /**
+     * Все запросы пакета выполняются одним проходом: таблица запросов (uri_id, start, end, unique) соединяется с hits,
+     * а общий диапазон [min start, max end] дает отсечение секций.
+     */
+    public List<StatsResponse> findBatchStats(List<StatsQuery> queries) {
+        StringBuilder values = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        for (StatsQuery query : queries) {
+            Integer uriId = hitDictionary.findUriId(query.getUri());
+            if (uriId == null) {
+                continue;
+            }
+            values.append(values.length() == 0 ? "" : ", ").append("(?::int, ?::timestamp, ?::timestamp, ?::boolean)");
+            args.add(uriId);
+            args.add(Timestamp.valueOf(query.getStart()));
+            args.add(Timestamp.valueOf(query.getEnd()));
+            args.add(query.isUnique());
+            from = from == null || query.getStart().isBefore(from) ? query.getStart() : from;
+            to = to == null || query.getEnd().isAfter(to) ? query.getEnd() : to;
+        }
+        if (args.isEmpty()) {
+            return List.of();
+        }
+        args.add(Timestamp.valueOf(from));
+        args.add(Timestamp.valueOf(to));
+        String sql = "SELECT h.app_id, h.uri_id, " +
+                "CASE WHEN q.uniq THEN COUNT(DISTINCT h.ip) ELSE COUNT(*) END AS hits " +
+                "FROM (VALUES " + values + ") AS q (uri_id, start_ts, end_ts, uniq) " +
+                "JOIN hits h ON h.uri_id = q.uri_id AND h.datetime BETWEEN q.start_ts AND q.end_ts " +
+                "WHERE h.datetime BETWEEN ? AND ? " +
+                "GROUP BY h.app_id, h.uri_id, q.uniq ORDER BY hits DESC";
+        return namedJdbcTemplate.getJdbcTemplate().query(sql,
+                (rs, rowNum) -> hitDictionary.toResponse(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")),
+                args.toArray());
+    }
+}
@@ -0,0 +1,116 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.MinuteCount;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsResponse;
+import util.TimeBuckets;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Поминутные агрегаты хитов (app_id, uri_id, minute) -> hits. Агрегаты обновляются вместе с записью хитов,
+ * а запросы /stats без unique берут целые минуты из агрегатов и сканируют сырые хиты только на краях диапазона.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitRollupRepository {
+
+    static final String UPSERT_ROLLUP = "INSERT INTO hits_minute (app_id, uri_id, bucket, hits) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app_id, uri_id, bucket) DO UPDATE SET hits = hits_minute.hits + EXCLUDED.hits";
+
+    static final Duration MINUTE = Duration.ofMinutes(1);
+
+    final JdbcTemplate jdbcTemplate;
+    final NamedParameterJdbcTemplate namedJdbcTemplate;
+    final HitDictionary hitDictionary;
+
+    public void increment(List<StatsHit> hits) {
+        Map<BucketKey, Long> counters = new TreeMap<>();
+        for (StatsHit hit : hits) {
+            BucketKey key = new BucketKey(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()),
+                    TimeBuckets.floor(hit.getTimestamp(), MINUTE));
+            counters.merge(key, 1L, Long::sum);
+        }
+        List<Object[]> args = new ArrayList<>(counters.size());
+        counters.forEach((key, count) ->
+                args.add(new Object[]{key.getAppId(), key.getUriId(), Timestamp.valueOf(key.getBucket()), count}));
+        jdbcTemplate.batchUpdate(UPSERT_ROLLUP, args);
+    }
+
+    public List<StatsResponse> findStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        List<StatsResponse> stats = new ArrayList<>();
+        forEachStats(start, end, uris, stats::add);
+        return stats;
+    }
+
+    public void forEachStats(LocalDateTime start, LocalDateTime end, List<String> uris, Consumer<StatsResponse> consumer) {
+        List<Integer> uriIds = uris != null ? hitDictionary.findUriIds(uris) : null;
+        if (uriIds != null && uriIds.isEmpty()) {
+            return;
+        }
+        forEachIdStats(start, end, uriIds,
+                (appId, uriId, hits) -> consumer.accept(hitDictionary.toResponse(appId, uriId, hits)));
+    }
+
+    public void forEachIdStats(LocalDateTime start, LocalDateTime end, IdStatsHandler handler) {
+        forEachIdStats(start, end, null, handler);
+    }
+
+    void forEachIdStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds, IdStatsHandler handler) {
+        LocalDateTime fullStart = TimeBuckets.ceil(start, MINUTE);
+        LocalDateTime fullEnd = TimeBuckets.floor(end, MINUTE);
+        if (!fullStart.isBefore(fullEnd)) {
+            fullStart = end;
+            fullEnd = end;
+        }
+        String uriFilter = uriIds != null ? "AND uri_id IN (:uriIds) " : "";
+        String sql = "SELECT app_id, uri_id, SUM(hits) AS hits FROM (" +
+                "SELECT app_id, uri_id, hits FROM hits_minute " +
+                "WHERE bucket >= :fullStart AND bucket < :fullEnd " + uriFilter +
+                "UNION ALL " +
+                "SELECT app_id, uri_id, COUNT(*) AS hits FROM hits " +
+                "WHERE ((datetime >= :start AND datetime < :fullStart) OR (datetime >= :fullEnd AND datetime <= :end)) " +
+                uriFilter +
+                "GROUP BY app_id, uri_id" +
+                ") AS parts GROUP BY app_id, uri_id ORDER BY hits DESC";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd))
+                .addValue("uriIds", uriIds);
+        namedJdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                handler.handle(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    public void forEachMinuteCount(LocalDateTime since, Consumer<MinuteCount> consumer) {
+        jdbcTemplate.query("SELECT app_id, uri_id, bucket, hits FROM hits_minute WHERE bucket >= ?",
+                (RowCallbackHandler) rs -> consumer.accept(new MinuteCount(hitDictionary.app(rs.getInt("app_id")),
+                        hitDictionary.uri(rs.getInt("uri_id")), rs.getTimestamp("bucket").toLocalDateTime(),
+                        rs.getLong("hits"))),
+                Timestamp.valueOf(TimeBuckets.floor(since, MINUTE)));
+    }
+
+    public interface IdStatsHandler {
+        void handle(int appId, int uriId, long hits);
+    }
+}
@@ -0,0 +1,144 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsResponse;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.SketchProperties;
+import util.IpAddresses;
+import util.TimeBuckets;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * HyperLogLog-скетчи уникальных ip по (app_id, uri_id, интервал stats.hll.bucket).
+ * Приблизительный unique-запрос объединяет скетчи целых интервалов и добавляет ip сырых хитов с краев диапазона.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitSketchRepository {
+
+    static final String INSERT_EMPTY = "INSERT INTO hits_hll (app_id, uri_id, bucket, sketch) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app_id, uri_id, bucket) DO NOTHING";
+    static final String SELECT_FOR_UPDATE = "SELECT hh.app_id, hh.uri_id, hh.bucket, hh.sketch FROM hits_hll hh " +
+            "JOIN unnest(?::int[], ?::int[], ?::timestamp[]) AS k (app_id, uri_id, bucket) USING (app_id, uri_id, bucket) " +
+            "ORDER BY hh.app_id, hh.uri_id, hh.bucket FOR UPDATE OF hh";
+    static final String UPDATE_SKETCH = "UPDATE hits_hll SET sketch = ? WHERE app_id = ? AND uri_id = ? AND bucket = ?";
+
+    final JdbcTemplate jdbcTemplate;
+    final NamedParameterJdbcTemplate namedJdbcTemplate;
+    final SketchProperties properties;
+    final HitDictionary hitDictionary;
+
+    // Строки скетчей пачки блокируются одним запросом в порядке ключей, как битмапы в HitVisitorRepository.
+    public void update(List<StatsHit> hits) {
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>();
+        for (StatsHit hit : hits) {
+            BucketKey key = new BucketKey(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()),
+                    TimeBuckets.floor(hit.getTimestamp(), properties.getBucket()));
+            sketches.computeIfAbsent(key, k -> new HyperLogLog(properties.getPrecision()))
+                    .add(IpAddresses.toBytes(hit.getIp()));
+        }
+        byte[] empty = new HyperLogLog(properties.getPrecision()).toBytes();
+        jdbcTemplate.batchUpdate(INSERT_EMPTY, sketches.keySet().stream()
+                .map(key -> new Object[]{key.getAppId(), key.getUriId(), Timestamp.valueOf(key.getBucket()), empty})
+                .collect(Collectors.toList()));
+        Integer[] appIds = sketches.keySet().stream().map(BucketKey::getAppId).toArray(Integer[]::new);
+        Integer[] uriIds = sketches.keySet().stream().map(BucketKey::getUriId).toArray(Integer[]::new);
+        String[] buckets = sketches.keySet().stream().map(key -> Timestamp.valueOf(key.getBucket()).toString()).toArray(String[]::new);
+        List<Object[]> updates = new ArrayList<>(sketches.size());
+        jdbcTemplate.query(SELECT_FOR_UPDATE, (RowCallbackHandler) rs -> {
+            Timestamp bucket = rs.getTimestamp("bucket");
+            BucketKey key = new BucketKey(rs.getInt("app_id"), rs.getInt("uri_id"), bucket.toLocalDateTime());
+            HyperLogLog sketch = sketches.get(key);
+            sketch.merge(HyperLogLog.fromBytes(rs.getBytes("sketch")));
+            updates.add(new Object[]{sketch.toBytes(), key.getAppId(), key.getUriId(), bucket});
+        }, appIds, uriIds, buckets);
+        jdbcTemplate.batchUpdate(UPDATE_SKETCH, updates);
+    }
+
+    public List<StatsResponse> findApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        List<Integer> uriIds = uris != null ? hitDictionary.findUriIds(uris) : null;
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        return findSketches(start, end, uriIds, true).entrySet().stream()
+                .map(entry -> hitDictionary.toResponse(entry.getKey().appId, entry.getKey().uriId, entry.getValue().estimate()))
+                .sorted(Comparator.comparing(StatsResponse::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    // Скетч по каждому app для объединения unique между шардами; без хранимых скетчей строится по сырым хитам.
+    public Map<String, HyperLogLog> findAppSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        List<Integer> uriIds = uris != null ? hitDictionary.findUriIds(uris) : null;
+        if (uriIds != null && uriIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, HyperLogLog> sketches = new HashMap<>();
+        findSketches(start, end, uriIds, properties.isEnabled()).forEach((key, sketch) ->
+                sketches.merge(hitDictionary.app(key.appId), sketch, (left, right) -> {
+                    left.merge(right);
+                    return left;
+                }));
+        return sketches;
+    }
+
+    Map<AppUri, HyperLogLog> findSketches(LocalDateTime start, LocalDateTime end, List<Integer> uriIds, boolean stored) {
+        LocalDateTime fullStart = TimeBuckets.ceil(start, properties.getBucket());
+        LocalDateTime fullEnd = TimeBuckets.floor(end, properties.getBucket());
+        if (!stored || !fullStart.isBefore(fullEnd)) {
+            fullStart = end;
+            fullEnd = end;
+        }
+        String uriFilter = uriIds != null ? "AND uri_id IN (:uriIds) " : "";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd))
+                .addValue("uriIds", uriIds);
+
+        Map<AppUri, HyperLogLog> merged = new HashMap<>();
+        namedJdbcTemplate.query("SELECT app_id, uri_id, sketch FROM hits_hll " +
+                "WHERE bucket >= :fullStart AND bucket < :fullEnd " + uriFilter, params, rs -> {
+                    HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+                    merged.merge(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), sketch, (left, right) -> {
+                        left.merge(right);
+                        return left;
+                    });
+                });
+        namedJdbcTemplate.query("SELECT DISTINCT app_id, uri_id, host(ip) AS ip FROM hits " +
+                "WHERE ((datetime >= :start AND datetime < :fullStart) OR (datetime >= :fullEnd AND datetime <= :end)) " +
+                uriFilter, params, rs -> {
+                    merged.computeIfAbsent(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")),
+                            k -> new HyperLogLog(properties.getPrecision())).add(IpAddresses.toBytes(rs.getString("ip")));
+                });
+        return merged;
+    }
+
+    @Value
+    static class AppUri {
+        int appId;
+        int uriId;
+    }
+}
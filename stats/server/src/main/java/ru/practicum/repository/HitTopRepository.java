@@ -0,0 +1,130 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsResponse;
+import ru.practicum.sketch.SpaceSaving;
+import ru.practicum.sketch.TopProperties;
+import util.TimeBuckets;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Сводки Space-Saving самых посещаемых uri по (app_id, интервал stats.top.bucket).
+ * Запрос /stats/top объединяет сводки целых интервалов и добавляет точные счетчики краев диапазона из поминутных агрегатов,
+ * поэтому не группирует все uri диапазона.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitTopRepository {
+
+    static final String INSERT_EMPTY = "INSERT INTO hits_top (app_id, bucket, summary) VALUES (?, ?, ?) " +
+            "ON CONFLICT (app_id, bucket) DO NOTHING";
+    static final String SELECT_FOR_UPDATE = "SELECT ht.app_id, ht.bucket, ht.summary FROM hits_top ht " +
+            "JOIN unnest(?::int[], ?::timestamp[]) AS k (app_id, bucket) USING (app_id, bucket) " +
+            "ORDER BY ht.app_id, ht.bucket FOR UPDATE OF ht";
+    static final String UPDATE_SUMMARY = "UPDATE hits_top SET summary = ? WHERE app_id = ? AND bucket = ?";
+
+    final JdbcTemplate jdbcTemplate;
+    final NamedParameterJdbcTemplate namedJdbcTemplate;
+    final TopProperties properties;
+    final HitDictionary hitDictionary;
+    final HitRollupRepository hitRollupRepository;
+
+    public void update(List<StatsHit> hits) {
+        // Ключ (app_id, bucket) -> счетчики uri пачки; uri_id в BucketKey не используется.
+        Map<BucketKey, Map<Integer, Long>> batches = new TreeMap<>();
+        for (StatsHit hit : hits) {
+            BucketKey key = new BucketKey(hitDictionary.appId(hit.getApp()), 0,
+                    TimeBuckets.floor(hit.getTimestamp(), properties.getBucket()));
+            batches.computeIfAbsent(key, k -> new HashMap<>()).merge(hitDictionary.uriId(hit.getUri()), 1L, Long::sum);
+        }
+        byte[] empty = new SpaceSaving(properties.getCapacity()).toBytes();
+        jdbcTemplate.batchUpdate(INSERT_EMPTY, batches.keySet().stream()
+                .map(key -> new Object[]{key.getAppId(), Timestamp.valueOf(key.getBucket()), empty})
+                .collect(Collectors.toList()));
+        // Строки сводок пачки блокируются одним запросом в порядке ключей.
+        Integer[] appIds = batches.keySet().stream().map(BucketKey::getAppId).toArray(Integer[]::new);
+        String[] buckets = batches.keySet().stream().map(key -> Timestamp.valueOf(key.getBucket()).toString()).toArray(String[]::new);
+        List<Object[]> updates = new ArrayList<>(batches.size());
+        jdbcTemplate.query(SELECT_FOR_UPDATE, (RowCallbackHandler) rs -> {
+            Timestamp bucket = rs.getTimestamp("bucket");
+            BucketKey key = new BucketKey(rs.getInt("app_id"), 0, bucket.toLocalDateTime());
+            SpaceSaving summary = SpaceSaving.fromBytes(rs.getBytes("summary"));
+            batches.get(key).forEach(summary::add);
+            updates.add(new Object[]{summary.toBytes(), key.getAppId(), bucket});
+        }, appIds, buckets);
+        jdbcTemplate.batchUpdate(UPDATE_SUMMARY, updates);
+    }
+
+    public List<StatsResponse> findTopStats(LocalDateTime start, LocalDateTime end, String app, int k) {
+        Integer appId = null;
+        if (app != null) {
+            appId = hitDictionary.findAppId(app);
+            if (appId == null) {
+                return List.of();
+            }
+        }
+        LocalDateTime fullStart = TimeBuckets.ceil(start, properties.getBucket());
+        LocalDateTime fullEnd = TimeBuckets.floor(end, properties.getBucket());
+        Map<Integer, Map<Integer, Long>> counts = new HashMap<>();
+        if (!fullStart.isBefore(fullEnd)) {
+            addExact(counts, start, end, appId);
+        } else {
+            Map<Integer, SpaceSaving> merged = new HashMap<>();
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("fullStart", Timestamp.valueOf(fullStart))
+                    .addValue("fullEnd", Timestamp.valueOf(fullEnd))
+                    .addValue("appId", appId);
+            namedJdbcTemplate.query("SELECT app_id, summary FROM hits_top " +
+                    "WHERE bucket >= :fullStart AND bucket < :fullEnd " +
+                    (appId != null ? "AND app_id = :appId" : ""), params, rs -> {
+                        SpaceSaving summary = SpaceSaving.fromBytes(rs.getBytes("summary"));
+                        merged.merge(rs.getInt("app_id"), summary, (left, right) -> {
+                            left.merge(right);
+                            return left;
+                        });
+                    });
+            merged.forEach((id, summary) -> summary.top(properties.getCapacity()).forEach(counter ->
+                    counts.computeIfAbsent(id, a -> new HashMap<>()).put(counter.getItem(), counter.getCount())));
+            // Границы секунд: края берутся как [start, fullStart) и [fullEnd, end].
+            if (start.isBefore(fullStart)) {
+                addExact(counts, start, fullStart.minusNanos(1000), appId);
+            }
+            addExact(counts, fullEnd, end, appId);
+        }
+        List<StatsResponse> top = new ArrayList<>();
+        counts.forEach((id, uris) -> uris.forEach((uriId, hits) -> top.add(hitDictionary.toResponse(id, uriId, hits))));
+        return top.stream()
+                .sorted(Comparator.comparing(StatsResponse::getHits).reversed())
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    void addExact(Map<Integer, Map<Integer, Long>> counts, LocalDateTime start, LocalDateTime end, Integer appId) {
+        hitRollupRepository.forEachIdStats(start, end, (statsAppId, uriId, hits) -> {
+            if (appId == null || appId.equals(statsAppId)) {
+                counts.computeIfAbsent(statsAppId, a -> new HashMap<>()).merge(uriId, hits, Long::sum);
+            }
+        });
+    }
+}
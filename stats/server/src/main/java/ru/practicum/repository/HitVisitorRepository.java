@@ -0,0 +1,214 @@
+package ru.practicum.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsResponse;
+import ru.practicum.visitor.VisitorProperties;
+import util.TimeBuckets;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Точный unique по битмапам посетителей: ip получает плотный id (таблица visitors), по каждому
+ * (app_id, uri_id, день) хранится Roaring-битмап id посетителей (hits_visitors).
+ * Битмапы обновляются в транзакции записи хитов, поэтому фиксируются и откатываются вместе с ними.
+ * Запрос объединяет битмапы целых дней и id посетителей сырых хитов с краев диапазона.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HitVisitorRepository {
+
+    public static final Duration DAY = Duration.ofDays(1);
+    // Порядок вставки одинаков у всех пачек: параллельные вставки одних и тех же ip не взаимоблокируются.
+    static final String INSERT_VISITORS = "INSERT INTO visitors (ip) SELECT DISTINCT ip FROM unnest(?::inet[]) AS input (ip) " +
+            "ORDER BY ip ON CONFLICT (ip) DO NOTHING";
+    static final String SELECT_VISITORS = "SELECT input.ord, v.id FROM unnest(?::inet[]) WITH ORDINALITY AS input (ip, ord) " +
+            "JOIN visitors v ON v.ip = input.ip";
+    static final String INSERT_EMPTY = "INSERT INTO hits_visitors (app_id, uri_id, bucket, bitmap) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app_id, uri_id, bucket) DO NOTHING";
+    static final String SELECT_FOR_UPDATE = "SELECT hv.app_id, hv.uri_id, hv.bucket, hv.bitmap FROM hits_visitors hv " +
+            "JOIN unnest(?::int[], ?::int[], ?::timestamp[]) AS k (app_id, uri_id, bucket) USING (app_id, uri_id, bucket) " +
+            "ORDER BY hv.app_id, hv.uri_id, hv.bucket FOR UPDATE OF hv";
+    static final String UPDATE_BITMAP = "UPDATE hits_visitors SET bitmap = ? WHERE app_id = ? AND uri_id = ? AND bucket = ?";
+
+    final JdbcTemplate jdbcTemplate;
+    final NamedParameterJdbcTemplate namedJdbcTemplate;
+    final HitDictionary hitDictionary;
+    final VisitorProperties properties;
+    // Кэш id последних посетителей (LRU), остальные читаются из visitors. Ключ - ip в записи IpAddresses.normalize.
+    final Map<String, Integer> visitorIds;
+
+    public HitVisitorRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+                                HitDictionary hitDictionary, VisitorProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.hitDictionary = hitDictionary;
+        this.properties = properties;
+        this.visitorIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > properties.getCacheSize();
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    // Вызывается до транзакции записи хитов: новые ip получают id короткими отдельными запросами,
+    // и транзакция хитов не ждет чужих вставок в visitors.
+    public void registerAll(List<StatsHit> hits) {
+        if (properties.isEnabled()) {
+            visitorIds(hits);
+        }
+    }
+
+    /**
+     * Вызывается в транзакции записи хитов. Строки битмапов блокируются одним запросом в порядке ключей,
+     * поэтому параллельные пачки не взаимоблокируются.
+     */
+    public void update(List<StatsHit> hits) {
+        if (!properties.isEnabled() || hits.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> ids = visitorIds(hits);
+        Map<BucketKey, RoaringBitmap> batch = new TreeMap<>();
+        for (StatsHit hit : hits) {
+            batch.computeIfAbsent(new BucketKey(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()),
+                    TimeBuckets.floor(hit.getTimestamp(), DAY)), key -> new RoaringBitmap()).add(ids.get(hit.getIp()));
+        }
+        byte[] empty = serialize(new RoaringBitmap());
+        jdbcTemplate.batchUpdate(INSERT_EMPTY, batch.keySet().stream()
+                .map(key -> new Object[]{key.getAppId(), key.getUriId(), Timestamp.valueOf(key.getBucket()), empty})
+                .collect(Collectors.toList()));
+        Integer[] appIds = batch.keySet().stream().map(BucketKey::getAppId).toArray(Integer[]::new);
+        Integer[] uriIds = batch.keySet().stream().map(BucketKey::getUriId).toArray(Integer[]::new);
+        String[] buckets = batch.keySet().stream().map(key -> Timestamp.valueOf(key.getBucket()).toString()).toArray(String[]::new);
+        List<Object[]> updates = new ArrayList<>(batch.size());
+        jdbcTemplate.query(SELECT_FOR_UPDATE, (RowCallbackHandler) rs -> {
+            Timestamp bucket = rs.getTimestamp("bucket");
+            BucketKey key = new BucketKey(rs.getInt("app_id"), rs.getInt("uri_id"), bucket.toLocalDateTime());
+            updates.add(new Object[]{serialize(RoaringBitmap.or(deserialize(rs.getBytes("bitmap")), batch.get(key))),
+                    key.getAppId(), key.getUriId(), bucket});
+        }, appIds, uriIds, buckets);
+        jdbcTemplate.batchUpdate(UPDATE_BITMAP, updates);
+    }
+
+    // id посетителей пачки: из кэша, остальные - из visitors; новые ip добавляются, только если их там нет.
+    Map<String, Integer> visitorIds(List<StatsHit> hits) {
+        Map<String, Integer> ids = new HashMap<>();
+        Set<String> unknown = new LinkedHashSet<>();
+        synchronized (visitorIds) {
+            for (StatsHit hit : hits) {
+                Integer id = visitorIds.get(hit.getIp());
+                if (id != null) {
+                    ids.put(hit.getIp(), id);
+                } else {
+                    unknown.add(hit.getIp());
+                }
+            }
+        }
+        if (unknown.isEmpty()) {
+            return ids;
+        }
+        Map<String, Integer> loaded = findVisitorIds(unknown.toArray(String[]::new));
+        if (loaded.size() < unknown.size()) {
+            String[] ips = unknown.stream().filter(ip -> !loaded.containsKey(ip)).toArray(String[]::new);
+            jdbcTemplate.update(INSERT_VISITORS, (Object) ips);
+            loaded.putAll(findVisitorIds(ips));
+        }
+        synchronized (visitorIds) {
+            visitorIds.putAll(loaded);
+        }
+        ids.putAll(loaded);
+        return ids;
+    }
+
+    Map<String, Integer> findVisitorIds(String[] ips) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(SELECT_VISITORS, (RowCallbackHandler) rs ->
+                ids.put(ips[rs.getInt("ord") - 1], rs.getInt("id")), (Object) ips);
+        return ids;
+    }
+
+    public List<StatsResponse> findUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        List<Integer> uriIds = uris != null ? hitDictionary.findUriIds(uris) : null;
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime ceil = TimeBuckets.ceil(start, DAY);
+        LocalDateTime floor = TimeBuckets.floor(end, DAY);
+        LocalDateTime fullStart = ceil.isBefore(floor) ? ceil : end;
+        LocalDateTime fullEnd = ceil.isBefore(floor) ? floor : end;
+
+        Map<Long, RoaringBitmap> visitors = new HashMap<>();
+        String uriFilter = uriIds != null ? "AND uri_id IN (:uriIds) " : "";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("fullStart", Timestamp.valueOf(fullStart))
+                .addValue("fullEnd", Timestamp.valueOf(fullEnd))
+                .addValue("uriIds", uriIds);
+        namedJdbcTemplate.query("SELECT app_id, uri_id, bitmap FROM hits_visitors " +
+                "WHERE bucket >= :fullStart AND bucket < :fullEnd " + uriFilter, params, rs -> {
+                    visitors(visitors, rs.getInt("app_id"), rs.getInt("uri_id")).or(deserialize(rs.getBytes("bitmap")));
+                });
+        namedJdbcTemplate.query("SELECT h.app_id, h.uri_id, v.id FROM hits h JOIN visitors v ON v.ip = h.ip " +
+                "WHERE ((h.datetime >= :start AND h.datetime < :fullStart) OR (h.datetime >= :fullEnd AND h.datetime <= :end)) " +
+                uriFilter, params, rs -> {
+                    visitors(visitors, rs.getInt("app_id"), rs.getInt("uri_id")).add(rs.getInt("id"));
+                });
+        return visitors.entrySet().stream()
+                .map(entry -> hitDictionary.toResponse((int) (entry.getKey() >>> 32), (int) (long) entry.getKey(),
+                        entry.getValue().getLongCardinality()))
+                .sorted(Comparator.comparing(StatsResponse::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    static RoaringBitmap visitors(Map<Long, RoaringBitmap> visitors, int appId, int uriId) {
+        return visitors.computeIfAbsent(((long) appId << 32) | uriId, key -> new RoaringBitmap());
+    }
+
+    static byte[] serialize(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    static RoaringBitmap deserialize(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+}
@@ -1,62 +1,59 @@
 package ru.practicum.repository;
 
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
-import org.springframework.stereotype.Repository;
+import ru.practicum.model.MinuteCount;
+import ru.practicum.model.StatsDelta;
 import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsQuery;
 import ru.practicum.model.StatsResponse;
+import ru.practicum.sketch.HyperLogLog;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
-@Repository
-public interface StatsRepository extends JpaRepository<StatsHit, Integer> {
-    @Query(value = "SELECT new ru.practicum.model.StatsResponse(" +
-            "hit.app as app, hit.uri as uri, COUNT(DISTINCT hit.ip) as counter) " +
-            "FROM StatsHit hit " +
-            "WHERE hit.timestamp between :start AND :end " +
-            "GROUP BY hit.app, hit.uri " +
-            "ORDER BY counter DESC")
-    List<StatsResponse> findUniqueStats(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end
-    );
-
-    @Query(value = "SELECT new ru.practicum.model.StatsResponse(" +
-            "hit.app as app, hit.uri as uri, COUNT(hit.ip) as counter) " +
-            "FROM StatsHit hit " +
-            "WHERE hit.timestamp between :start AND :end " +
-            "GROUP BY hit.app, hit.uri " +
-            "ORDER BY counter DESC")
-    List<StatsResponse> findStats(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end
-    );
-
-    @Query(value = "SELECT new ru.practicum.model.StatsResponse(" +
-            "hit.app as app, hit.uri as uri, COUNT(DISTINCT hit.ip) as counter) " +
-            "FROM StatsHit hit " +
-            "WHERE hit.timestamp between :start AND :end " +
-            "AND uri in ( :uris) " +
-            "GROUP BY hit.app, hit.uri " +
-            "ORDER BY counter DESC")
-    List<StatsResponse> findUniqueStats(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end,
-            @Param("uris") List<String> uris
-    );
-
-    @Query(value = "SELECT new ru.practicum.model.StatsResponse(" +
-            "hit.app as app, hit.uri as uri, COUNT(hit.ip) as counter) " +
-            "FROM StatsHit hit " +
-            "WHERE hit.timestamp between :start AND :end " +
-            "AND uri in ( :uris) " +
-            "GROUP BY hit.app, hit.uri " +
-            "ORDER BY counter DESC")
-    List<StatsResponse> findStats(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end,
-            @Param("uris") List<String> uris
-    );
+public interface StatsRepository {
+
+    int saveAll(List<StatsHit> hits);
+
+    int importAll(List<StatsHit> hits);
+
+    List<StatsResponse> findStats(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    List<StatsResponse> findUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    /**
+     * Без since - полная статистика и текущая позиция хранилища, с since - только приращения по хитам,
+     * записанным после этой позиции. Каждый хит попадает ровно в один ответ цепочки запросов.
+     */
+    StatsDelta findStatsDelta(LocalDateTime start, LocalDateTime end, List<String> uris, String since);
+
+    List<StatsResponse> findApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    Map<String, HyperLogLog> findUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    List<String> findUrisByPrefix(String prefix);
+
+    List<StatsResponse> findUniqueGroupedStats(LocalDateTime start, LocalDateTime end, Map<String, List<String>> groups);
+
+    List<StatsResponse> findTopStats(LocalDateTime start, LocalDateTime end, String app, int k);
+
+    List<StatsResponse> findBatchStats(List<StatsQuery> queries);
+
+    void forEachMinuteCount(LocalDateTime since, Consumer<MinuteCount> consumer);
+
+    /**
+     * Live-статистика самого хранилища. Пусто - хранилище ее не ведет, и /stats/live считают
+     * счетчики в памяти этого сервера (LiveCounters).
+     */
+    default Optional<List<StatsResponse>> findLiveStats(List<String> uris, Duration window) {
+        return Optional.empty();
+    }
+
+    void forEachStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                      Consumer<StatsResponse> consumer);
+
+    void forEachHit(LocalDateTime start, LocalDateTime end, Consumer<StatsHit> consumer);
 }
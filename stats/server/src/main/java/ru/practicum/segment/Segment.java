@@ -0,0 +1,122 @@
+package ru.practicum.segment;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import util.IpAddresses;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Файл фиксированного размера, отображенный в память. Заголовок хранит число записей и диапазон их времени,
+ * запись - время в мс, id приложения, id uri и 16 байт ip.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class Segment {
+
+    static final int MAGIC = 0x45574d53;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 8 + 4 + 4 + IpAddresses.LENGTH;
+
+    @Getter
+    final Path file;
+    final int capacity;
+    final MappedByteBuffer buffer;
+    volatile int count;
+    @Getter
+    volatile long minTimestamp;
+    @Getter
+    volatile long maxTimestamp;
+
+    Segment(Path file, int capacity) {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean created = channel.size() == 0;
+            long size = created ? HEADER_SIZE + (long) capacity * RECORD_SIZE : channel.size();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (buffer.getInt(0) == MAGIC) {
+            this.capacity = (int) ((buffer.capacity() - HEADER_SIZE) / RECORD_SIZE);
+            count = buffer.getInt(4);
+            minTimestamp = buffer.getLong(8);
+            maxTimestamp = buffer.getLong(16);
+        } else {
+            this.capacity = capacity;
+            minTimestamp = Long.MAX_VALUE;
+            maxTimestamp = Long.MIN_VALUE;
+            buffer.putInt(0, MAGIC);
+            writeHeader();
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    boolean overlaps(long start, long end) {
+        return count > 0 && minTimestamp <= end && maxTimestamp >= start;
+    }
+
+    // Вызывается под блокировкой писателя: сначала пишется запись, затем счетчик в заголовке.
+    void append(long timestamp, int appId, int uriId, byte[] ip) {
+        int offset = HEADER_SIZE + count * RECORD_SIZE;
+        buffer.putLong(offset, timestamp);
+        buffer.putInt(offset + 8, appId);
+        buffer.putInt(offset + 12, uriId);
+        for (int i = 0; i < IpAddresses.LENGTH; i++) {
+            buffer.put(offset + 16 + i, ip[i]);
+        }
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        count++;
+        writeHeader();
+    }
+
+    long timestamp(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    int appId(int index) {
+        return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 8);
+    }
+
+    int uriId(int index) {
+        return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 12);
+    }
+
+    long ipHigh(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + 16);
+    }
+
+    long ipLow(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + 24);
+    }
+
+    void ip(int index, byte[] target) {
+        for (int i = 0; i < IpAddresses.LENGTH; i++) {
+            target[i] = buffer.get(HEADER_SIZE + index * RECORD_SIZE + 16 + i);
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void writeHeader() {
+        buffer.putLong(8, minTimestamp);
+        buffer.putLong(16, maxTimestamp);
+        buffer.putInt(4, count);
+    }
+}
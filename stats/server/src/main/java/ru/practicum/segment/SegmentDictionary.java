@@ -0,0 +1,92 @@
+package ru.practicum.segment;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Словарь строка <-> целочисленный id. Новые значения дописываются в конец файла,
+ * id значения - его порядковый номер в файле. Строки хранятся упорядоченно для поиска по префиксу.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class SegmentDictionary implements Closeable {
+
+    final NavigableMap<String, Integer> ids = new ConcurrentSkipListMap<>();
+    final List<String> values = new ArrayList<>();
+    final DataOutputStream out;
+
+    SegmentDictionary(Path file) {
+        try {
+            if (Files.exists(file)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    while (true) {
+                        String value = in.readUTF();
+                        ids.put(value, values.size());
+                        values.add(value);
+                    }
+                } catch (EOFException e) {
+                    // конец словаря
+                }
+            }
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Integer find(String value) {
+        return ids.get(value);
+    }
+
+    List<String> findByPrefix(String prefix) {
+        return new ArrayList<>(ids.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet());
+    }
+
+    int getOrAdd(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            try {
+                out.writeUTF(value);
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            id = values.size();
+            values.add(value);
+            ids.put(value, id);
+            return id;
+        }
+    }
+
+    synchronized String get(int id) {
+        return values.get(id);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
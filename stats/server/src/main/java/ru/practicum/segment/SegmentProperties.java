@@ -0,0 +1,20 @@
+package ru.practicum.segment;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.segment")
+public class SegmentProperties {
+
+    String directory = "data/segments";
+
+    int recordsPerSegment = 1_000_000;
+
+    boolean forceOnWrite = false;
+}
@@ -0,0 +1,386 @@
+package ru.practicum.segment;
+
+import lombok.AccessLevel;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.metrics.StatsMetrics;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.MinuteCount;
+import ru.practicum.model.StatsDelta;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsQuery;
+import ru.practicum.model.StatsResponse;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.SketchProperties;
+import util.IpAddresses;
+import util.TimeBuckets;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище хитов в файлах-сегментах, отображенных в память (stats.storage=segment).
+ * Хиты только дописываются в последний сегмент; запрос читает лишь сегменты,
+ * диапазон времени которых пересекается с запрошенным. При старте существующие сегменты отображаются заново.
+ */
+@Slf4j
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segment")
+public class SegmentStatsRepository implements StatsRepository {
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final Duration MINUTE = Duration.ofMinutes(1);
+
+    final SegmentProperties properties;
+    final StatsMetrics statsMetrics;
+    final SketchProperties sketchProperties;
+    final Path directory;
+    final SegmentDictionary apps;
+    final SegmentDictionary uris;
+    final List<Segment> segments = new CopyOnWriteArrayList<>();
+    final Object writeLock = new Object();
+
+    public SegmentStatsRepository(SegmentProperties properties, StatsMetrics statsMetrics,
+                                  SketchProperties sketchProperties) {
+        this.properties = properties;
+        this.statsMetrics = statsMetrics;
+        this.sketchProperties = sketchProperties;
+        this.directory = Paths.get(properties.getDirectory());
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                        .sorted()
+                        .forEach(file -> segments.add(new Segment(file, properties.getRecordsPerSegment())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        apps = new SegmentDictionary(directory.resolve("apps.dict"));
+        uris = new SegmentDictionary(directory.resolve("uris.dict"));
+        log.info("Хранилище сегментов {}: загружено сегментов {}", directory.toAbsolutePath(), segments.size());
+    }
+
+    @Override
+    public int saveAll(List<StatsHit> hits) {
+        List<byte[]> ips = new ArrayList<>(hits.size());
+        for (StatsHit hit : hits) {
+            try {
+                ips.add(IpAddresses.toBytes(hit.getIp()));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException(e.getMessage());
+            }
+        }
+        synchronized (writeLock) {
+            Segment segment = null;
+            for (int i = 0; i < hits.size(); i++) {
+                if (segment == null || segment.isFull()) {
+                    segment = writableSegment();
+                }
+                StatsHit hit = hits.get(i);
+                segment.append(toMillis(hit.getTimestamp()), apps.getOrAdd(hit.getApp()), uris.getOrAdd(hit.getUri()),
+                        ips.get(i));
+            }
+            if (properties.isForceOnWrite() && segment != null) {
+                segment.force();
+            }
+        }
+        return hits.size();
+    }
+
+    // Сегменты и так пишутся только добавлением в конец, отдельного пути массовой загрузки нет.
+    @Override
+    public int importAll(List<StatsHit> hits) {
+        return saveAll(hits);
+    }
+
+    @Override
+    public List<StatsResponse> findStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<Long, long[]> counters = new HashMap<>();
+        scan(start, end, uris, (segment, index, key) -> counters.computeIfAbsent(key, k -> new long[1])[0]++);
+        return toResponses(counters.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue()[0])));
+    }
+
+    /**
+     * Позиция - номер сегмента в старших 32 битах и число записей в нем в младших; читается под блокировкой
+     * писателя, поэтому пакет хитов не разрывается. Просматриваются только записи между двумя позициями.
+     */
+    @Override
+    public StatsDelta findStatsDelta(LocalDateTime start, LocalDateTime end, List<String> uris, String since) {
+        long from = 0;
+        if (since != null) {
+            try {
+                from = Long.parseLong(since);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Курсор не подходит для этого хранилища");
+            }
+        }
+        long position;
+        synchronized (writeLock) {
+            position = segments.isEmpty() ? 0
+                    : ((long) (segments.size() - 1) << 32) + segments.get(segments.size() - 1).count();
+        }
+        Map<Long, long[]> counters = new HashMap<>();
+        scan(start, end, uris, from, position,
+                (segment, index, key) -> counters.computeIfAbsent(key, k -> new long[1])[0]++);
+        return new StatsDelta(toResponses(counters.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue()[0]))), String.valueOf(position));
+    }
+
+    @Override
+    public List<StatsResponse> findUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<Long, Set<Ip>> visitors = new HashMap<>();
+        scan(start, end, uris, (segment, index, key) -> visitors.computeIfAbsent(key, k -> new HashSet<>())
+                .add(new Ip(segment.ipHigh(index), segment.ipLow(index))));
+        return toResponses(visitors.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> (long) entry.getValue().size())));
+    }
+
+    // Сегменты хранят все хиты, поэтому приблизительный запрос отвечает точным значением.
+    @Override
+    public List<StatsResponse> findApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return findUniqueStats(start, end, uris);
+    }
+
+    @Override
+    public Map<String, HyperLogLog> findUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<Integer, HyperLogLog> sketches = new HashMap<>();
+        byte[] ip = new byte[IpAddresses.LENGTH];
+        scan(start, end, uris, (segment, index, key) -> {
+            segment.ip(index, ip);
+            sketches.computeIfAbsent((int) (key >>> 32), appId -> new HyperLogLog(sketchProperties.getPrecision()))
+                    .add(ip);
+        });
+        return sketches.entrySet().stream()
+                .collect(Collectors.toMap(entry -> apps.get(entry.getKey()), Map.Entry::getValue));
+    }
+
+    @Override
+    public List<String> findUrisByPrefix(String prefix) {
+        return uris.findByPrefix(prefix);
+    }
+
+    @Override
+    public List<StatsResponse> findUniqueGroupedStats(LocalDateTime start, LocalDateTime end,
+                                                      Map<String, List<String>> groups) {
+        List<String> names = new ArrayList<>(groups.keySet());
+        Map<Integer, List<Integer>> groupsByUriId = new HashMap<>();
+        for (int grp = 0; grp < names.size(); grp++) {
+            for (String uri : groups.get(names.get(grp))) {
+                Integer uriId = uris.find(uri);
+                if (uriId != null) {
+                    groupsByUriId.computeIfAbsent(uriId, id -> new ArrayList<>()).add(grp);
+                }
+            }
+        }
+        if (groupsByUriId.isEmpty()) {
+            return List.of();
+        }
+        List<String> uriFilter = groupsByUriId.keySet().stream().map(uris::get).collect(Collectors.toList());
+        Map<Long, Set<Ip>> visitors = new HashMap<>();
+        scan(start, end, uriFilter, (segment, index, key) -> {
+            Ip ip = new Ip(segment.ipHigh(index), segment.ipLow(index));
+            for (int grp : groupsByUriId.get((int) key)) {
+                visitors.computeIfAbsent((key & 0xFFFFFFFF00000000L) | grp, k -> new HashSet<>()).add(ip);
+            }
+        });
+        return visitors.entrySet().stream()
+                .map(entry -> new StatsResponse(apps.get((int) (entry.getKey() >>> 32)),
+                        names.get((int) (long) entry.getKey()), (long) entry.getValue().size()))
+                .sorted(Comparator.comparing(StatsResponse::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    // Сегменты хранят все хиты, поэтому топ считается точно полным проходом по диапазону.
+    @Override
+    public List<StatsResponse> findTopStats(LocalDateTime start, LocalDateTime end, String app, int k) {
+        return findStats(start, end, null).stream()
+                .filter(stats -> app == null || app.equals(stats.getApp()))
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<StatsResponse> findBatchStats(List<StatsQuery> queries) {
+        Map<Integer, StatsQuery> byUriId = new HashMap<>();
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        for (StatsQuery query : queries) {
+            Integer uriId = uris.find(query.getUri());
+            if (uriId != null) {
+                byUriId.put(uriId, query);
+                from = from == null || query.getStart().isBefore(from) ? query.getStart() : from;
+                to = to == null || query.getEnd().isAfter(to) ? query.getEnd() : to;
+            }
+        }
+        if (byUriId.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, long[]> counters = new HashMap<>();
+        Map<Long, Set<Ip>> visitors = new HashMap<>();
+        List<String> uriFilter = byUriId.values().stream().map(StatsQuery::getUri).collect(Collectors.toList());
+        scan(from, to, uriFilter, (segment, index, key) -> {
+            StatsQuery query = byUriId.get((int) key);
+            long timestamp = segment.timestamp(index);
+            if (timestamp < toMillis(query.getStart()) || timestamp > toMillis(query.getEnd())) {
+                return;
+            }
+            if (query.isUnique()) {
+                visitors.computeIfAbsent(key, k -> new HashSet<>()).add(new Ip(segment.ipHigh(index), segment.ipLow(index)));
+            } else {
+                counters.computeIfAbsent(key, k -> new long[1])[0]++;
+            }
+        });
+        Map<Long, Long> result = new HashMap<>();
+        counters.forEach((key, counter) -> result.put(key, counter[0]));
+        visitors.forEach((key, ips) -> result.put(key, (long) ips.size()));
+        return toResponses(result);
+    }
+
+    @Override
+    public void forEachMinuteCount(LocalDateTime since, Consumer<MinuteCount> consumer) {
+        Map<BucketKey, Long> counts = new HashMap<>();
+        scan(since, LocalDateTime.now().plusDays(1), null, (segment, index, key) -> counts.merge(new BucketKey((int) (key >>> 32),
+                (int) key, TimeBuckets.floor(toLocalDateTime(segment.timestamp(index)), MINUTE)), 1L, Long::sum));
+        counts.forEach((key, hits) -> consumer.accept(new MinuteCount(apps.get(key.getAppId()), uris.get(key.getUriId()),
+                key.getBucket(), hits)));
+    }
+
+    // Сегменты агрегируются в памяти, поэтому потоково отдается уже готовый результат.
+    @Override
+    public void forEachStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             Consumer<StatsResponse> consumer) {
+        (unique ? findUniqueStats(start, end, uris) : findStats(start, end, uris)).forEach(consumer);
+    }
+
+    @Override
+    public void forEachHit(LocalDateTime start, LocalDateTime end, Consumer<StatsHit> consumer) {
+        byte[] ip = new byte[IpAddresses.LENGTH];
+        scan(start, end, null, (segment, index, key) -> {
+            segment.ip(index, ip);
+            consumer.accept(new StatsHit(null, apps.get((int) (key >>> 32)), uris.get((int) key),
+                    IpAddresses.toString(ip), toLocalDateTime(segment.timestamp(index))));
+        });
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        synchronized (writeLock) {
+            segments.forEach(Segment::force);
+            apps.close();
+            uris.close();
+        }
+    }
+
+    void scan(LocalDateTime start, LocalDateTime end, List<String> uriFilter, RecordVisitor visitor) {
+        scan(start, end, uriFilter, 0, Long.MAX_VALUE, visitor);
+    }
+
+    // Позиция записи - (номер сегмента << 32) + номер записи; просматриваются записи с позициями [fromPosition, toPosition).
+    void scan(LocalDateTime start, LocalDateTime end, List<String> uriFilter, long fromPosition, long toPosition,
+              RecordVisitor visitor) {
+        Set<Integer> uriIds = null;
+        if (uriFilter != null) {
+            uriIds = uriFilter.stream()
+                    .map(uris::find)
+                    .filter(id -> id != null)
+                    .collect(Collectors.toSet());
+            if (uriIds.isEmpty()) {
+                return;
+            }
+        }
+        long from = toMillis(start);
+        long to = toMillis(end);
+        long scanned = 0;
+        long base = -(1L << 32);
+        for (Segment segment : segments) {
+            base += 1L << 32;
+            if (!segment.overlaps(from, to)) {
+                continue;
+            }
+            int count = segment.count();
+            int first = (int) Math.min(Math.max(fromPosition - base, 0), count);
+            int last = (int) Math.min(Math.max(toPosition - base, 0), count);
+            scanned += Math.max(last - first, 0);
+            for (int i = first; i < last; i++) {
+                long timestamp = segment.timestamp(i);
+                if (timestamp < from || timestamp > to) {
+                    continue;
+                }
+                int uriId = segment.uriId(i);
+                if (uriIds != null && !uriIds.contains(uriId)) {
+                    continue;
+                }
+                visitor.visit(segment, i, ((long) segment.appId(i) << 32) | uriId);
+            }
+        }
+        statsMetrics.scanned(scanned);
+    }
+
+    List<StatsResponse> toResponses(Map<Long, Long> counters) {
+        return counters.entrySet().stream()
+                .map(entry -> new StatsResponse(apps.get((int) (entry.getKey() >>> 32)),
+                        uris.get((int) (long) entry.getKey()), entry.getValue()))
+                .sorted(Comparator.comparing(StatsResponse::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    Segment writableSegment() {
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            if (!last.isFull()) {
+                return last;
+            }
+            last.force();
+        }
+        Path file = directory.resolve(String.format("%s%09d%s", SEGMENT_PREFIX, segments.size(), SEGMENT_SUFFIX));
+        Segment segment = new Segment(file, properties.getRecordsPerSegment());
+        segments.add(segment);
+        log.info("Создан сегмент {}", file.getFileName());
+        return segment;
+    }
+
+    static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), 0, ZoneOffset.UTC);
+    }
+
+    static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    interface RecordVisitor {
+        void visit(Segment segment, int index, long key);
+    }
+
+    @Value
+    static class Ip {
+        long high;
+        long low;
+    }
+}
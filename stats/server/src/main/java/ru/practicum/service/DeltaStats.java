@@ -0,0 +1,17 @@
+package ru.practicum.service;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import ru.practicum.StatsResponseDto;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class DeltaStats {
+    List<StatsResponseDto> stats;
+    String cursor;
+}
@@ -1,14 +1,51 @@
 package ru.practicum.service;
 
 import ru.practicum.StatsHitDto;
+import ru.practicum.StatsQueryDto;
 import ru.practicum.StatsResponseDto;
+import ru.practicum.cache.CachedStats;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface StatsService {
     StatsHitDto save(StatsHitDto statsHitDto);
 
+    int saveAll(List<StatsHitDto> statsHitDtos);
+
     List<StatsResponseDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
 
+    List<StatsResponseDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                    boolean approx);
+
+    List<StatsResponseDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                    boolean approx, boolean group);
+
+    DeltaStats getDeltaStats(LocalDateTime start, LocalDateTime end, List<String> uris, String since);
+
+    List<String> findUris(String prefix);
+
+    Map<String, byte[]> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    CachedStats getCachedStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                               boolean approx, boolean group);
+
+    List<StatsResponseDto> getTopStats(LocalDateTime start, LocalDateTime end, String app, int k);
+
+    List<StatsResponseDto> getLiveStats(List<String> uris, Duration window);
+
+    List<StatsResponseDto> getBatchStats(List<StatsQueryDto> queries);
+
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique, boolean approx,
+                     Consumer<StatsResponseDto> consumer);
+
+    long exportHits(LocalDateTime start, LocalDateTime end, OutputStream out) throws IOException;
+
+    int importHits(InputStream in);
 }
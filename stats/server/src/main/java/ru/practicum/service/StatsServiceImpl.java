@@ -5,17 +5,46 @@ import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.StatsHitDto;
+import ru.practicum.StatsQueryDto;
 import ru.practicum.StatsResponseDto;
+import ru.practicum.archive.HitArchiveReader;
+import ru.practicum.archive.HitArchiveWriter;
+import ru.practicum.buffer.HitBuffer;
+import ru.practicum.cache.CachedStats;
+import ru.practicum.cache.StatsCache;
 import ru.practicum.exception.BadRequestException;
+import ru.practicum.live.LiveCounters;
+import ru.practicum.live.LiveProperties;
 import ru.practicum.mapper.Mapper;
+import ru.practicum.metrics.StatsMetrics;
+import ru.practicum.model.StatsDelta;
 import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsQuery;
 import ru.practicum.model.StatsResponse;
 import ru.practicum.repository.StatsRepository;
+import ru.practicum.sketch.SketchProperties;
+import ru.practicum.sketch.TopProperties;
+import util.IpAddresses;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,41 +53,288 @@ import java.util.stream.Collectors;
 @Slf4j
 public class StatsServiceImpl implements StatsService {
 
+    static final String WILDCARD = "*";
+
     final StatsRepository statsRepository;
+    final HitBuffer hitBuffer;
+    final SketchProperties sketchProperties;
+    final StatsCache statsCache;
+    final TopProperties topProperties;
+    final LiveCounters liveCounters;
+    final LiveProperties liveProperties;
+    final StatsMetrics statsMetrics;
 
-    @Transactional
     public StatsHitDto save(StatsHitDto statsHitDto) {
         log.info("Сохранение статистики..");
         StatsHit statsHit = Mapper.toHit(statsHitDto);
-        StatsHit savedStatsHit = statsRepository.save(statsHit);
-        return Mapper.toHitDto(savedStatsHit);
+        normalizeIp(statsHit);
+        if (hitBuffer.isEnabled()) {
+            hitBuffer.add(statsHit);
+            liveCounters.record(List.of(statsHit));
+            statsMetrics.ingested(List.of(statsHit));
+            return Mapper.toHitDto(statsHit);
+        }
+        statsRepository.saveAll(List.of(statsHit));
+        statsCache.invalidate(List.of(statsHit));
+        liveCounters.record(List.of(statsHit));
+        statsMetrics.ingested(List.of(statsHit));
+        return Mapper.toHitDto(statsHit);
+    }
+
+    public int saveAll(List<StatsHitDto> statsHitDtos) {
+        log.info("Пакетное сохранение статистики, записей: {}", statsHitDtos.size());
+        List<StatsHit> statsHits = statsHitDtos.stream()
+                .map(Mapper::toHit)
+                .collect(Collectors.toList());
+        statsHits.forEach(this::normalizeIp);
+        int saved = statsRepository.saveAll(statsHits);
+        statsCache.invalidate(statsHits);
+        liveCounters.record(statsHits);
+        statsMetrics.ingested(statsHits);
+        return saved;
     }
 
     public List<StatsResponseDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
-        if (start.isAfter(end)) {
-            throw new BadRequestException("Неверно указано время начала");
+        return getStats(start, end, uris, unique, false);
+    }
+
+    public List<StatsResponseDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                           boolean approx) {
+        return getStats(start, end, uris, unique, approx, false);
+    }
+
+    public List<StatsResponseDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                           boolean approx, boolean group) {
+        checkRange(start, end);
+        if (unique && approx && !sketchProperties.isEnabled()) {
+            throw new BadRequestException("Приблизительный подсчет уникальных посещений отключен");
         }
 
         List<StatsResponse> statsList;
         log.info("Получение статистики..");
+        if (group) {
+            statsList = statsMetrics.returned("grouped", getGroupedStats(start, end, uris, unique, approx));
+        } else if (unique && approx) {
+            statsList = statsMetrics.returned("approx",
+                    statsRepository.findApproxUniqueStats(start, end, resolveUris(uris)));
+        } else if (unique) {
+            statsList = statsMetrics.returned("unique",
+                    statsRepository.findUniqueStats(start, end, resolveUris(uris)));
+        } else {
+            statsList = statsMetrics.returned("stats", statsRepository.findStats(start, end, resolveUris(uris)));
+        }
+
+        List<StatsResponseDto> statsResponseDtoList = statsList.stream()
+                .map(Mapper::toStatsDto)
+                .collect(Collectors.toList());
+
+        return statsResponseDtoList;
+    }
+
+    // Каждый элемент uris - отдельная группа: для шаблона "/events/*" в ответе uri = "/events/*" и сумма по всем его uri.
+    List<StatsResponse> getGroupedStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                        boolean approx) {
+        if (uris == null || uris.isEmpty()) {
+            throw new BadRequestException("Для группировки нужно указать uris");
+        }
+        if (unique && approx) {
+            throw new BadRequestException("Группировка не поддерживается для приблизительного подсчета");
+        }
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String pattern : uris) {
+            groups.put(pattern, resolveUris(List.of(pattern)));
+        }
         if (unique) {
-            if (uris != null) {
-                statsList = statsRepository.findUniqueStats(start, end, uris);
-            } else {
-                statsList = statsRepository.findUniqueStats(start, end);
+            return statsRepository.findUniqueGroupedStats(start, end, groups);
+        }
+        Map<String, Map<String, Long>> hitsByUri = new HashMap<>();
+        List<String> members = groups.values().stream()
+                .flatMap(List::stream)
+                .distinct()
+                .collect(Collectors.toList());
+        for (StatsResponse stats : statsRepository.findStats(start, end, members)) {
+            hitsByUri.computeIfAbsent(stats.getUri(), uri -> new HashMap<>()).put(stats.getApp(), stats.getHits());
+        }
+        List<StatsResponse> grouped = new ArrayList<>();
+        groups.forEach((pattern, groupUris) -> {
+            Map<String, Long> hitsByApp = new HashMap<>();
+            for (String uri : groupUris) {
+                hitsByUri.getOrDefault(uri, Map.of()).forEach((app, hits) -> hitsByApp.merge(app, hits, Long::sum));
             }
-        } else {
-            if (uris != null) {
-                statsList = statsRepository.findStats(start, end, uris);
+            hitsByApp.forEach((app, hits) -> grouped.add(new StatsResponse(app, pattern, hits)));
+        });
+        grouped.sort(Comparator.comparing(StatsResponse::getHits).reversed());
+        return grouped;
+    }
+
+    // Шаблон с '*' в конце заменяется на все известные uri с этим префиксом (поиск по упорядоченному словарю uri).
+    List<String> resolveUris(List<String> uris) {
+        if (uris == null || uris.stream().noneMatch(uri -> uri.contains(WILDCARD))) {
+            return uris;
+        }
+        Set<String> resolved = new LinkedHashSet<>();
+        for (String uri : uris) {
+            int wildcard = uri.indexOf(WILDCARD);
+            if (wildcard < 0) {
+                resolved.add(uri);
+            } else if (wildcard == uri.length() - 1) {
+                resolved.addAll(statsRepository.findUrisByPrefix(uri.substring(0, wildcard)));
             } else {
-                statsList = statsRepository.findStats(start, end);
+                throw new BadRequestException("Символ '*' допускается только в конце uri: " + uri);
             }
         }
+        return new ArrayList<>(resolved);
+    }
 
-        List<StatsResponseDto> statsResponseDtoList = statsList.stream()
+    public List<StatsResponseDto> getTopStats(LocalDateTime start, LocalDateTime end, String app, int k) {
+        checkRange(start, end);
+        if (!topProperties.isEnabled()) {
+            throw new BadRequestException("Подсчет самых посещаемых uri отключен");
+        }
+        if (k > topProperties.getCapacity()) {
+            throw new BadRequestException("Размер топа не может превышать " + topProperties.getCapacity());
+        }
+        log.info("Получение топ-{} uri..", k);
+        return statsMetrics.returned("top", statsRepository.findTopStats(start, end, app, k)).stream()
                 .map(Mapper::toStatsDto)
                 .collect(Collectors.toList());
+    }
 
-        return statsResponseDtoList;
+    public List<StatsResponseDto> getLiveStats(List<String> uris, Duration window) {
+        if (!liveCounters.isEnabled()) {
+            throw new BadRequestException("Счетчики live отключены");
+        }
+        if (window.isNegative() || window.isZero() || window.compareTo(liveProperties.getMaxWindow()) > 0) {
+            throw new BadRequestException("Окно должно быть больше нуля и не больше " + liveProperties.getMaxWindow());
+        }
+        List<StatsResponse> stats = statsRepository.findLiveStats(uris, window)
+                .orElseGet(() -> liveCounters.getStats(uris, window));
+        return statsMetrics.returned("live", stats).stream()
+                .map(Mapper::toStatsDto)
+                .collect(Collectors.toList());
+    }
+
+    public List<StatsResponseDto> getBatchStats(List<StatsQueryDto> queryDtos) {
+        log.info("Пакетное получение статистики, запросов: {}", queryDtos.size());
+        Set<String> uris = new HashSet<>();
+        for (StatsQueryDto query : queryDtos) {
+            checkRange(query.getStart(), query.getEnd());
+            if (!uris.add(query.getUri())) {
+                throw new BadRequestException("Uri " + query.getUri() + " указан в пакете несколько раз");
+            }
+        }
+        if (queryDtos.isEmpty()) {
+            return List.of();
+        }
+        List<StatsQuery> queries = queryDtos.stream()
+                .map(Mapper::toQuery)
+                .collect(Collectors.toList());
+        return statsMetrics.returned("batch", statsRepository.findBatchStats(queries)).stream()
+                .map(Mapper::toStatsDto)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Курсор - позиция хранилища в base64url, клиент передает его как есть. Дельта - только приращения числа хитов
+     * по uri, поэтому unique и группировка не поддерживаются; кэш ответов не используется.
+     */
+    public DeltaStats getDeltaStats(LocalDateTime start, LocalDateTime end, List<String> uris, String since) {
+        checkRange(start, end);
+        String position = null;
+        if (since != null) {
+            try {
+                position = new String(Base64.getUrlDecoder().decode(since), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Некорректный курсор: " + since);
+            }
+        }
+        log.info("Получение приращений статистики..");
+        StatsDelta delta = statsRepository.findStatsDelta(start, end, resolveUris(uris), position);
+        List<StatsResponseDto> stats = statsMetrics.returned("delta", delta.getStats()).stream()
+                .map(Mapper::toStatsDto)
+                .collect(Collectors.toList());
+        return new DeltaStats(stats, Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(delta.getPosition().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public List<String> findUris(String prefix) {
+        return statsRepository.findUrisByPrefix(prefix);
+    }
+
+    public Map<String, byte[]> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        checkRange(start, end);
+        return statsRepository.findUniqueSketches(start, end, resolveUris(uris)).entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().toBytes()));
+    }
+
+    public CachedStats getCachedStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                      boolean approx, boolean group) {
+        checkRange(start, end);
+        return statsCache.get(start, end, uris, unique, approx, group,
+                () -> getStats(start, end, uris, unique, approx, group));
+    }
+
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique, boolean approx,
+                            Consumer<StatsResponseDto> consumer) {
+        log.info("Потоковое получение статистики..");
+        if (unique && approx) {
+            getStats(start, end, uris, true, true).forEach(consumer);
+            return;
+        }
+        checkRange(start, end);
+        statsRepository.forEachStats(start, end, resolveUris(uris), unique,
+                stats -> consumer.accept(Mapper.toStatsDto(stats)));
+    }
+
+    public long exportHits(LocalDateTime start, LocalDateTime end, OutputStream out) throws IOException {
+        log.info("Выгрузка хитов за период {} - {}..", start, end);
+        try (HitArchiveWriter writer = new HitArchiveWriter(out)) {
+            statsRepository.forEachHit(start, end, hit -> {
+                try {
+                    writer.write(hit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.info("Выгружено хитов: {}", writer.getWritten());
+            return writer.getWritten();
+        }
+    }
+
+    // Каждый блок архива загружается отдельной транзакцией: при ошибке уже загруженные блоки остаются в базе.
+    public int importHits(InputStream in) {
+        log.info("Загрузка архива хитов..");
+        int imported = 0;
+        try {
+            HitArchiveReader reader = new HitArchiveReader(in);
+            List<StatsHit> block;
+            while ((block = reader.readBlock()) != null) {
+                block.forEach(this::normalizeIp);
+                imported += statsRepository.importAll(block);
+                statsCache.invalidate(block);
+                liveCounters.record(block);
+                statsMetrics.ingested(block);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            throw new BadRequestException("Архив хитов поврежден (загружено хитов: " + imported + "): "
+                    + e.getMessage());
+        }
+        log.info("Загружено хитов: {}", imported);
+        return imported;
+    }
+
+    // Все хранилища и сводки получают ip в одной записи, иначе точный unique и HLL считали бы посетителей по-разному.
+    void normalizeIp(StatsHit hit) {
+        try {
+            hit.setIp(IpAddresses.normalize(hit.getIp()));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    public void checkRange(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end)) {
+            throw new BadRequestException("Неверно указано время начала");
+        }
     }
 }
\ No newline at end of file
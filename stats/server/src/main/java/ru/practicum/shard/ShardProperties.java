@@ -0,0 +1,26 @@
+package ru.practicum.shard;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.shard")
+public class ShardProperties {
+
+    List<String> urls = new ArrayList<>();
+
+    Duration connectTimeout = Duration.ofSeconds(1);
+
+    Duration readTimeout = Duration.ofSeconds(30);
+
+    int threads = 16;
+}
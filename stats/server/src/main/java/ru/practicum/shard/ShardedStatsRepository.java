@@ -0,0 +1,426 @@
+package ru.practicum.shard;
+
+import lombok.AccessLevel;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+import ru.practicum.StatsHitDto;
+import ru.practicum.StatsQueryDto;
+import ru.practicum.StatsResponseDto;
+import ru.practicum.archive.HitArchiveReader;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.exception.ShardUnavailableException;
+import ru.practicum.exception.WriteNotConfirmedException;
+import ru.practicum.mapper.Mapper;
+import ru.practicum.model.MinuteCount;
+import ru.practicum.model.StatsDelta;
+import ru.practicum.model.StatsHit;
+import ru.practicum.model.StatsQuery;
+import ru.practicum.model.StatsResponse;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.sketch.HyperLogLog;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static util.Constants.JSON_FORMAT_PATTERN_FOR_TIME;
+import static util.Constants.STATS_CURSOR_HEADER;
+
+/**
+ * Роутер шардов (stats.storage=sharded): сам ничего не хранит, а ходит по HTTP в серверы статистики stats.shard.urls.
+ * Хит попадает на шард floorMod(uri.hashCode(), N), поэтому все хиты одного uri лежат на одном шарде:
+ * запросы по uri отправляются только на их шарды, ответы шардов не пересекаются и просто склеиваются.
+ * Unique для групп uri с разных шардов считается объединением HyperLogLog-скетчей (/stats/sketch).
+ * Число шардов менять нельзя без перераспределения данных (выгрузка и загрузка архивом через роутер).
+ */
+@Slf4j
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(name = "stats.storage", havingValue = "sharded")
+public class ShardedStatsRepository implements StatsRepository {
+
+    static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(JSON_FORMAT_PATTERN_FOR_TIME);
+    static final int URIS_PER_REQUEST = 100;
+    static final ParameterizedTypeReference<Map<String, byte[]>> SKETCHES = new ParameterizedTypeReference<>() {
+    };
+
+    final List<String> shards;
+    final RestTemplate restTemplate;
+    final ExecutorService executor;
+
+    public ShardedStatsRepository(ShardProperties properties, RestTemplateBuilder restTemplateBuilder) {
+        if (properties.getUrls().isEmpty()) {
+            throw new IllegalStateException("Для stats.storage=sharded нужно указать stats.shard.urls");
+        }
+        this.shards = List.copyOf(properties.getUrls());
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setReadTimeout(properties.getReadTimeout())
+                .build();
+        this.executor = Executors.newFixedThreadPool(properties.getThreads());
+        log.info("Роутер шардов: {}", shards);
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public int saveAll(List<StatsHit> hits) {
+        Map<Integer, List<StatsHitDto>> byShard = hits.stream()
+                .collect(Collectors.groupingBy(hit -> shardOf(hit.getUri()),
+                        Collectors.mapping(Mapper::toHitDto, Collectors.toList())));
+        try {
+            return scatter(new ArrayList<>(byShard.entrySet()), entry ->
+                    restTemplate.postForObject(shards.get(entry.getKey()) + "/hits", entry.getValue(), Integer.class))
+                    .stream()
+                    .mapToInt(Integer::intValue)
+                    .sum();
+        } catch (ShardUnavailableException e) {
+            // 503 обещает клиенту, что пачка не записана и ее можно повторить. Это верно, только если пачка шла
+            // на один шард и соединение с ним не установлено; иначе часть хитов могла уже записаться.
+            if (byShard.size() > 1 || !(e.getCause() instanceof ResourceAccessException
+                    && e.getCause().getCause() instanceof ConnectException)) {
+                throw new WriteNotConfirmedException("Запись пачки на шарды не подтверждена: " + e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public int importAll(List<StatsHit> hits) {
+        return saveAll(hits);
+    }
+
+    @Override
+    public List<StatsResponse> findStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return findStats(start, end, uris, false, false);
+    }
+
+    @Override
+    public List<StatsResponse> findUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return findStats(start, end, uris, true, false);
+    }
+
+    /**
+     * Позиция роутера - курсоры шардов через запятую (пусто - шард еще не опрашивался, для него придет полный ответ).
+     * Курсор шарда должен покрывать все его uri, поэтому каждому шарду уходит один запрос: если uri шарда больше
+     * URIS_PER_REQUEST, запрос идет без фильтра, а лишние uri отбрасываются здесь.
+     */
+    @Override
+    public StatsDelta findStatsDelta(LocalDateTime start, LocalDateTime end, List<String> uris, String since) {
+        String[] positions = since == null ? new String[shards.size()] : since.split(",", -1);
+        if (positions.length != shards.size()) {
+            throw new BadRequestException("Курсор не подходит для этого хранилища");
+        }
+        List<ShardPart> parts = new ArrayList<>();
+        if (uris == null) {
+            parts.addAll(parts(null));
+        } else {
+            uris.stream()
+                    .distinct()
+                    .collect(Collectors.groupingBy(this::shardOf, LinkedHashMap::new, Collectors.toList()))
+                    .forEach((shard, shardUris) -> parts.add(new ShardPart(shard,
+                            shardUris.size() > URIS_PER_REQUEST ? null : shardUris)));
+        }
+        List<ResponseEntity<StatsResponseDto[]>> responses = scatter(parts, part -> {
+            UriComponentsBuilder builder = range(uri(part.getShard(), "/stats"), start, end);
+            String position = positions[part.getShard()];
+            if (position == null || position.isEmpty()) {
+                builder.queryParam("delta", true);
+            } else {
+                builder.queryParam("since", position);
+            }
+            if (part.getUris() != null) {
+                builder.queryParam("uris", part.getUris());
+            }
+            return restTemplate.getForEntity(builder.encode().build().toUri(), StatsResponseDto[].class);
+        });
+        Set<String> filter = uris == null ? null : new HashSet<>(uris);
+        List<StatsResponse> stats = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            ResponseEntity<StatsResponseDto[]> response = responses.get(i);
+            positions[parts.get(i).getShard()] = response.getHeaders().getFirst(STATS_CURSOR_HEADER);
+            toResponses(response.getBody()).stream()
+                    .filter(row -> filter == null || filter.contains(row.getUri()))
+                    .forEach(stats::add);
+        }
+        return new StatsDelta(sortByHits(stats), Arrays.stream(positions)
+                .map(position -> position == null ? "" : position)
+                .collect(Collectors.joining(",")));
+    }
+
+    @Override
+    public List<StatsResponse> findApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return findStats(start, end, uris, true, true);
+    }
+
+    @Override
+    public Map<String, HyperLogLog> findUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<String, HyperLogLog> merged = new HashMap<>();
+        for (Map<String, byte[]> sketches : scatter(parts(uris), part -> fetchSketches(part, start, end))) {
+            sketches.forEach((app, bytes) -> merge(merged, app, HyperLogLog.fromBytes(bytes)));
+        }
+        return merged;
+    }
+
+    @Override
+    public List<String> findUrisByPrefix(String prefix) {
+        TreeSet<String> uris = new TreeSet<>();
+        scatter(parts(null), part -> restTemplate.getForObject(uri(part.getShard(), "/stats/uris")
+                .queryParam("prefix", prefix).encode().build().toUri(), String[].class))
+                .forEach(shardUris -> uris.addAll(Arrays.asList(shardUris)));
+        return new ArrayList<>(uris);
+    }
+
+    @Override
+    public List<StatsResponse> findUniqueGroupedStats(LocalDateTime start, LocalDateTime end,
+                                                      Map<String, List<String>> groups) {
+        // одна задача на каждую часть каждой группы, чтобы все запросы шли параллельно
+        List<String> names = new ArrayList<>(groups.keySet());
+        List<Integer> partGroups = new ArrayList<>();
+        List<ShardPart> parts = new ArrayList<>();
+        for (int grp = 0; grp < names.size(); grp++) {
+            for (ShardPart part : parts(groups.get(names.get(grp)))) {
+                partGroups.add(grp);
+                parts.add(part);
+            }
+        }
+        List<Map<String, byte[]>> results = scatter(parts, part -> fetchSketches(part, start, end));
+        Map<Integer, Map<String, HyperLogLog>> merged = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, HyperLogLog> sketches = merged.computeIfAbsent(partGroups.get(i), grp -> new HashMap<>());
+            results.get(i).forEach((app, bytes) -> merge(sketches, app, HyperLogLog.fromBytes(bytes)));
+        }
+        List<StatsResponse> grouped = new ArrayList<>();
+        merged.forEach((grp, sketches) -> sketches.forEach((app, sketch) ->
+                grouped.add(new StatsResponse(app, names.get(grp), sketch.estimate()))));
+        return sortByHits(grouped);
+    }
+
+    // Каждый uri целиком на одном шарде, поэтому топ всех шардов - лучшие k из объединения их топов.
+    @Override
+    public List<StatsResponse> findTopStats(LocalDateTime start, LocalDateTime end, String app, int k) {
+        List<StatsResponse> top = new ArrayList<>();
+        scatter(parts(null), part -> {
+            UriComponentsBuilder builder = range(uri(part.getShard(), "/stats/top"), start, end).queryParam("k", k);
+            if (app != null) {
+                builder.queryParam("app", app);
+            }
+            return restTemplate.getForObject(builder.encode().build().toUri(), StatsResponseDto[].class);
+        }).forEach(rows -> top.addAll(toResponses(rows)));
+        return sortByHits(top).stream()
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<StatsResponse> findBatchStats(List<StatsQuery> queries) {
+        Map<Integer, List<StatsQueryDto>> byShard = queries.stream()
+                .collect(Collectors.groupingBy(query -> shardOf(query.getUri()), Collectors.mapping(
+                        query -> new StatsQueryDto(query.getUri(), query.getStart(), query.getEnd(), query.isUnique()),
+                        Collectors.toList())));
+        List<StatsResponse> stats = new ArrayList<>();
+        scatter(new ArrayList<>(byShard.entrySet()), entry -> restTemplate.postForObject(
+                shards.get(entry.getKey()) + "/stats/batch", entry.getValue(), StatsResponseDto[].class))
+                .forEach(rows -> stats.addAll(toResponses(rows)));
+        return sortByHits(stats);
+    }
+
+    // Роутер не хранит поминутных счетчиков: /stats/live он запрашивает у шардов (findLiveStats).
+    @Override
+    public void forEachMinuteCount(LocalDateTime since, Consumer<MinuteCount> consumer) {
+    }
+
+    // Хиты uri пишутся на его шард, но ответы все равно складываются по (app, uri): так хиты, записанные
+    // в шард напрямую, не дают повторов.
+    @Override
+    public Optional<List<StatsResponse>> findLiveStats(List<String> uris, Duration window) {
+        Map<List<String>, Long> hits = new LinkedHashMap<>();
+        scatter(parts(uris), part -> {
+            UriComponentsBuilder builder = uri(part.getShard(), "/stats/live").queryParam("window", window);
+            if (part.getUris() != null) {
+                builder.queryParam("uris", part.getUris());
+            }
+            return restTemplate.getForObject(builder.encode().build().toUri(), StatsResponseDto[].class);
+        }).forEach(rows -> toResponses(rows).forEach(row ->
+                hits.merge(List.of(row.getApp(), row.getUri()), row.getHits(), Long::sum)));
+        List<StatsResponse> stats = new ArrayList<>();
+        hits.forEach((key, count) -> stats.add(new StatsResponse(key.get(0), key.get(1), count)));
+        return Optional.of(sortByHits(stats));
+    }
+
+    @Override
+    public void forEachStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             Consumer<StatsResponse> consumer) {
+        (unique ? findUniqueStats(start, end, uris) : findStats(start, end, uris)).forEach(consumer);
+    }
+
+    // Шарды выгружаются по очереди, порядок по времени соблюдается только внутри шарда.
+    @Override
+    public void forEachHit(LocalDateTime start, LocalDateTime end, Consumer<StatsHit> consumer) {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            URI uri = range(uri(shard, "/admin/hits/export"), start, end).encode().build().toUri();
+            call(() -> restTemplate.execute(uri, HttpMethod.GET, null, response -> {
+                HitArchiveReader reader = new HitArchiveReader(response.getBody());
+                List<StatsHit> block;
+                while ((block = reader.readBlock()) != null) {
+                    block.forEach(consumer);
+                }
+                return null;
+            }));
+        }
+    }
+
+    List<StatsResponse> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                  boolean approx) {
+        List<StatsResponse> stats = new ArrayList<>();
+        scatter(parts(uris), part -> {
+            UriComponentsBuilder builder = range(uri(part.getShard(), "/stats"), start, end)
+                    .queryParam("unique", unique)
+                    .queryParam("approx", approx);
+            if (part.getUris() != null) {
+                builder.queryParam("uris", part.getUris());
+            }
+            return restTemplate.getForObject(builder.encode().build().toUri(), StatsResponseDto[].class);
+        }).forEach(rows -> stats.addAll(toResponses(rows)));
+        return sortByHits(stats);
+    }
+
+    Map<String, byte[]> fetchSketches(ShardPart part, LocalDateTime start, LocalDateTime end) {
+        UriComponentsBuilder builder = range(uri(part.getShard(), "/stats/sketch"), start, end);
+        if (part.getUris() != null) {
+            builder.queryParam("uris", part.getUris());
+        }
+        return restTemplate.exchange(builder.encode().build().toUri(), HttpMethod.GET, null, SKETCHES).getBody();
+    }
+
+    int shardOf(String uri) {
+        return Math.floorMod(uri.hashCode(), shards.size());
+    }
+
+    /**
+     * Без списка uri запрос идет на все шарды (uris = null - без фильтра), иначе только на шарды этих uri;
+     * длинный список делится на части по URIS_PER_REQUEST, чтобы не упереться в предел длины строки запроса.
+     * Ответы частей не пересекаются (uri в одной части), а скетчи частей объединяются.
+     */
+    List<ShardPart> parts(List<String> uris) {
+        if (uris == null) {
+            return IntStream.range(0, shards.size())
+                    .mapToObj(shard -> new ShardPart(shard, null))
+                    .collect(Collectors.toList());
+        }
+        Map<Integer, List<String>> byShard = uris.stream()
+                .distinct()
+                .collect(Collectors.groupingBy(this::shardOf, LinkedHashMap::new, Collectors.toList()));
+        List<ShardPart> parts = new ArrayList<>();
+        byShard.forEach((shard, shardUris) -> {
+            for (int from = 0; from < shardUris.size(); from += URIS_PER_REQUEST) {
+                parts.add(new ShardPart(shard,
+                        shardUris.subList(from, Math.min(from + URIS_PER_REQUEST, shardUris.size()))));
+            }
+        });
+        return parts;
+    }
+
+    // Запросы выполняются параллельно, ответы возвращаются в порядке запросов.
+    <T, R> List<R> scatter(List<T> requests, Function<T, R> call) {
+        List<CompletableFuture<R>> futures = requests.stream()
+                .map(request -> CompletableFuture.supplyAsync(() -> call(() -> call.apply(request)), executor))
+                .collect(Collectors.toList());
+        try {
+            return futures.stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Ошибка запроса (4xx) возвращается клиенту как есть, недоступность шарда - 503.
+    <R> R call(ShardRequest<R> request) {
+        try {
+            return request.execute();
+        } catch (HttpClientErrorException e) {
+            throw new BadRequestException(e.getResponseBodyAsString());
+        } catch (RestClientException | IOException e) {
+            throw new ShardUnavailableException(e.getMessage(), e);
+        }
+    }
+
+    UriComponentsBuilder uri(int shard, String path) {
+        return UriComponentsBuilder.fromHttpUrl(shards.get(shard)).path(path);
+    }
+
+    static UriComponentsBuilder range(UriComponentsBuilder builder, LocalDateTime start, LocalDateTime end) {
+        return builder.queryParam("start", start.format(FORMATTER))
+                .queryParam("end", end.format(FORMATTER));
+    }
+
+    static List<StatsResponse> toResponses(StatsResponseDto[] rows) {
+        return Arrays.stream(rows)
+                .map(row -> new StatsResponse(row.getApp(), row.getUri(), row.getHits()))
+                .collect(Collectors.toList());
+    }
+
+    static List<StatsResponse> sortByHits(List<StatsResponse> stats) {
+        stats.sort(Comparator.comparing(StatsResponse::getHits).reversed());
+        return stats;
+    }
+
+    static void merge(Map<String, HyperLogLog> sketches, String app, HyperLogLog sketch) {
+        sketches.merge(app, sketch, (left, right) -> {
+            left.merge(right);
+            return left;
+        });
+    }
+
+    @Value
+    static class ShardPart {
+        int shard;
+        List<String> uris;
+    }
+
+    interface ShardRequest<R> {
+        R execute() throws IOException;
+    }
+}
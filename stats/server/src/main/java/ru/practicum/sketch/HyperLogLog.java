@@ -0,0 +1,156 @@
+package ru.practicum.sketch;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HyperLogLog-оценка числа уникальных значений.
+ * Точность p задает 2^p регистров; стандартная ошибка оценки около 1.04 / sqrt(2^p):
+ * p = 10 - 3.3%, p = 11 - 2.3%, p = 12 - 1.6%, p = 14 - 0.8%.
+ * Малые множества хранятся в разреженном виде, поэтому редкие uri почти не занимают места.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    static final byte DENSE = 0;
+    static final byte SPARSE = 1;
+
+    @Getter
+    final int precision;
+    final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть от " + MIN_PRECISION
+                    + " до " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(String value) {
+        add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void add(byte[] value) {
+        long hash = hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Нельзя объединить HyperLogLog разной точности: "
+                    + precision + " и " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        double m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(registers.length) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log(m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+        int sparseSize = 4 + nonZero * 3;
+        if (sparseSize < 2 + registers.length) {
+            ByteBuffer buffer = ByteBuffer.allocate(sparseSize);
+            buffer.put((byte) precision).put(SPARSE).putShort((short) nonZero);
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] != 0) {
+                    buffer.putShort((short) i).put(registers[i]);
+                }
+            }
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 + registers.length);
+        buffer.put((byte) precision).put(DENSE).put(registers);
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        HyperLogLog sketch = new HyperLogLog(buffer.get());
+        if (buffer.get() == SPARSE) {
+            int count = Short.toUnsignedInt(buffer.getShort());
+            for (int i = 0; i < count; i++) {
+                sketch.registers[Short.toUnsignedInt(buffer.getShort())] = buffer.get();
+            }
+        } else {
+            buffer.get(sketch.registers);
+        }
+        return sketch;
+    }
+
+    static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    // Блоки по 8 байт перемешиваются по схеме MurmurHash3 x64: побайтовый FNV давал заметное смещение оценки
+    // на ip-адресах из одной подсети.
+    static long hash64(byte[] value) {
+        long hash = 0x9e3779b97f4a7c15L;
+        for (int offset = 0; offset < value.length; offset += 8) {
+            long block = 0;
+            for (int i = 0; i < 8; i++) {
+                block <<= 8;
+                if (offset + i < value.length) {
+                    block |= value[offset + i] & 0xFF;
+                }
+            }
+            block *= 0x87c37b91114253d5L;
+            block = Long.rotateLeft(block, 31);
+            block *= 0x4cf5ad432745937fL;
+            hash ^= block;
+            hash = Long.rotateLeft(hash, 27) * 5 + 0x52dce729;
+        }
+        hash ^= value.length;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,180 @@
+package ru.practicum.sketch;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Space-Saving: не более capacity счетчиков самых частых элементов.
+ * Новый элемент при заполненной сводке вытесняет минимальный счетчик и наследует его значение как ошибку,
+ * поэтому count завышает частоту не более чем на error, а любой элемент с частотой больше N / capacity гарантированно в сводке.
+ * Сводки складываются (merge) с сохранением этой оценки.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SpaceSaving {
+
+    @Getter
+    final int capacity;
+    final Map<Integer, Counter> counters;
+    // Min-куча счетчиков по count с индексом в самих счетчиках: минимум - heap[0], вытеснение и прибавка - O(log capacity).
+    final Counter[] heap;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Емкость Space-Saving должна быть положительной: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>();
+        this.heap = new Counter[capacity];
+    }
+
+    public void add(int item, long weight) {
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.index);
+            return;
+        }
+        if (counters.size() < capacity) {
+            insert(new Counter(item, weight, 0));
+            return;
+        }
+        Counter min = heap[0];
+        counters.remove(min.item);
+        Counter replacement = new Counter(item, min.count + weight, min.count);
+        replacement.index = 0;
+        heap[0] = replacement;
+        counters.put(item, replacement);
+        siftDown(0);
+    }
+
+    public void merge(SpaceSaving other) {
+        long thisMin = isFull() ? heap[0].count : 0;
+        long otherMin = other.isFull() ? other.heap[0].count : 0;
+        Map<Integer, Counter> merged = new HashMap<>();
+        for (Counter counter : counters.values()) {
+            Counter that = other.counters.get(counter.item);
+            merged.put(counter.item, new Counter(counter.item,
+                    counter.count + (that != null ? that.count : otherMin),
+                    counter.error + (that != null ? that.error : otherMin)));
+        }
+        for (Counter that : other.counters.values()) {
+            if (!counters.containsKey(that.item)) {
+                merged.put(that.item, new Counter(that.item, that.count + thisMin, that.error + thisMin));
+            }
+        }
+        clear();
+        merged.values().stream()
+                .sorted(Comparator.comparingLong(Counter::getCount).reversed())
+                .limit(capacity)
+                .forEach(this::insert);
+    }
+
+    public List<Counter> top(int k) {
+        return counters.values().stream()
+                .sorted(Comparator.comparingLong(Counter::getCount).reversed())
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    public boolean isFull() {
+        return counters.size() >= capacity;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + counters.size() * 20);
+        buffer.putInt(capacity).putInt(counters.size());
+        for (Counter counter : counters.values()) {
+            buffer.putInt(counter.item).putLong(counter.count).putLong(counter.error);
+        }
+        return buffer.array();
+    }
+
+    public static SpaceSaving fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        SpaceSaving summary = new SpaceSaving(buffer.getInt());
+        int size = buffer.getInt();
+        if (size < 0 || size > summary.capacity) {
+            throw new IllegalArgumentException("Поврежденная сводка Space-Saving: " + size + " счетчиков");
+        }
+        for (int i = 0; i < size; i++) {
+            summary.insert(new Counter(buffer.getInt(), buffer.getLong(), buffer.getLong()));
+        }
+        return summary;
+    }
+
+    void clear() {
+        Arrays.fill(heap, 0, counters.size(), null);
+        counters.clear();
+    }
+
+    void insert(Counter counter) {
+        int index = counters.size();
+        counters.put(counter.item, counter);
+        counter.index = index;
+        heap[index] = counter;
+        siftUp(index);
+    }
+
+    void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    void siftDown(int index) {
+        Counter counter = heap[index];
+        int size = counters.size();
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    @Getter
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Counter {
+        final int item;
+        long count;
+        long error;
+        @Getter(AccessLevel.NONE)
+        int index;
+
+        public Counter(int item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.sketch;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.top")
+public class TopProperties {
+
+    boolean enabled = true;
+
+    int capacity = 1000;
+
+    Duration bucket = Duration.ofHours(1);
+}
@@ -0,0 +1,18 @@
+package ru.practicum.visitor;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "stats.visitors")
+public class VisitorProperties {
+
+    boolean enabled = true;
+
+    int cacheSize = 100000;
+}
@@ -7,5 +7,7 @@ public class Constants {
 
     public static final String JSON_FORMAT_PATTERN_FOR_TIME = "yyyy-MM-dd HH:mm:ss";
 
+    public static final String STATS_CURSOR_HEADER = "X-Stats-Cursor";
+
 
 }
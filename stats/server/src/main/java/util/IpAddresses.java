@@ -0,0 +1,88 @@
+package util;
+
+import lombok.experimental.UtilityClass;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+@UtilityClass
+public class IpAddresses {
+
+    public static final int LENGTH = 16;
+
+    // IPv4 и IPv4-mapped IPv6 (::ffff:1.2.3.4) дают одни и те же 16 байт ::ffff:a.b.c.d.
+    public static byte[] toBytes(String ip) {
+        byte[] ipv4 = parseIpv4(ip);
+        if (ipv4 != null) {
+            return mapped(ipv4);
+        }
+        // Адрес с зоной (fe80::1%1) не принимает тип inet в Postgres, а зона не относится к посетителю.
+        if (ip == null || ip.indexOf(':') < 0 || ip.indexOf('%') >= 0) {
+            throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+        }
+        InetAddress address;
+        try {
+            // Строка с ':' разбирается как IPv6-литерал без обращения к DNS.
+            address = InetAddress.getByName(ip);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+        }
+        byte[] bytes = address instanceof Inet4Address ? mapped(address.getAddress()) : address.getAddress();
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("Некорректный ip-адрес: " + ip);
+        }
+        return bytes;
+    }
+
+    // Каноническая запись адреса: разные записи одного посетителя (1.2.3.4 и ::ffff:1.2.3.4) совпадают.
+    public static String normalize(String ip) {
+        return toString(toBytes(ip));
+    }
+
+    static byte[] mapped(byte[] ipv4) {
+        byte[] bytes = new byte[LENGTH];
+        bytes[10] = (byte) 0xff;
+        bytes[11] = (byte) 0xff;
+        System.arraycopy(ipv4, 0, bytes, 12, 4);
+        return bytes;
+    }
+
+    public static String toString(byte[] bytes) {
+        boolean mapped = bytes[10] == (byte) 0xff && bytes[11] == (byte) 0xff;
+        for (int i = 0; i < 10 && mapped; i++) {
+            mapped = bytes[i] == 0;
+        }
+        if (mapped) {
+            return (bytes[12] & 0xff) + "." + (bytes[13] & 0xff) + "." + (bytes[14] & 0xff) + "." + (bytes[15] & 0xff);
+        }
+        try {
+            return Inet6Address.getByAddress(bytes).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static byte[] parseIpv4(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            if (parts[i].isEmpty() || parts[i].length() > 3 || !parts[i].chars().allMatch(Character::isDigit)) {
+                return null;
+            }
+            int value = Integer.parseInt(parts[i]);
+            if (value > 255) {
+                return null;
+            }
+            bytes[i] = (byte) value;
+        }
+        return bytes;
+    }
+}
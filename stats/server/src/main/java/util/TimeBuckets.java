@@ -0,0 +1,22 @@
+package util;
+
+import lombok.experimental.UtilityClass;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+@UtilityClass
+public class TimeBuckets {
+
+    public static LocalDateTime floor(LocalDateTime time, Duration bucket) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        long size = bucket.getSeconds();
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(seconds, size) * size, 0, ZoneOffset.UTC);
+    }
+
+    public static LocalDateTime ceil(LocalDateTime time, Duration bucket) {
+        LocalDateTime floor = floor(time, bucket);
+        return floor.isBefore(time) ? floor.plus(bucket) : floor;
+    }
+}
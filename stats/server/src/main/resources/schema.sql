@@ -1,10 +1,75 @@
-DROP TABLE IF EXISTS hits;
+DROP TABLE IF EXISTS hits CASCADE;
+DROP TABLE IF EXISTS hits_minute;
+DROP TABLE IF EXISTS hits_hll;
+DROP TABLE IF EXISTS hits_top;
+DROP TABLE IF EXISTS hits_visitors;
+DROP TABLE IF EXISTS visitors;
+DROP TABLE IF EXISTS apps;
+DROP TABLE IF EXISTS uris;
+
+ CREATE TABLE IF NOT EXISTS apps  (
+     id       INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+     name     VARCHAR(256) NOT NULL UNIQUE
+     );
+
+ CREATE TABLE IF NOT EXISTS uris  (
+     id       INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+     uri      VARCHAR(256) NOT NULL UNIQUE
+     );
 
  CREATE TABLE IF NOT EXISTS hits  (
      id       BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-     app      VARCHAR(256) NOT NULL,
-     uri      VARCHAR(256) NOT NULL,
-     ip       VARCHAR(15) NOT NULL,
+     app_id   INT NOT NULL,
+     uri_id   INT NOT NULL,
+     ip       INET NOT NULL,
      datetime TIMESTAMP WITHOUT TIME ZONE NOT NULL,
-     CONSTRAINT pk_hit PRIMARY KEY (id)
-     );
\ No newline at end of file
+     CONSTRAINT pk_hit PRIMARY KEY (id, datetime)
+     ) PARTITION BY RANGE (datetime);
+
+ CREATE TABLE IF NOT EXISTS hits_default PARTITION OF hits DEFAULT;
+
+ CREATE INDEX IF NOT EXISTS idx_hits_datetime ON hits (datetime);
+
+ CREATE INDEX IF NOT EXISTS idx_hits_uri_datetime ON hits (uri_id, datetime);
+
+ CREATE TABLE IF NOT EXISTS hits_minute  (
+     app_id   INT NOT NULL REFERENCES apps (id),
+     uri_id   INT NOT NULL REFERENCES uris (id),
+     bucket   TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     hits     BIGINT NOT NULL,
+     CONSTRAINT pk_hits_minute PRIMARY KEY (app_id, uri_id, bucket)
+     );
+
+ CREATE INDEX IF NOT EXISTS idx_hits_minute_bucket ON hits_minute (bucket);
+
+ CREATE TABLE IF NOT EXISTS hits_hll  (
+     app_id   INT NOT NULL REFERENCES apps (id),
+     uri_id   INT NOT NULL REFERENCES uris (id),
+     bucket   TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     sketch   BYTEA NOT NULL,
+     CONSTRAINT pk_hits_hll PRIMARY KEY (app_id, uri_id, bucket)
+     );
+
+ CREATE INDEX IF NOT EXISTS idx_hits_hll_bucket ON hits_hll (bucket);
+
+ CREATE TABLE IF NOT EXISTS hits_top  (
+     app_id   INT NOT NULL REFERENCES apps (id),
+     bucket   TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     summary  BYTEA NOT NULL,
+     CONSTRAINT pk_hits_top PRIMARY KEY (app_id, bucket)
+     );
+
+ CREATE TABLE IF NOT EXISTS visitors  (
+     id       INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+     ip       INET NOT NULL UNIQUE
+     );
+
+ CREATE TABLE IF NOT EXISTS hits_visitors  (
+     app_id   INT NOT NULL REFERENCES apps (id),
+     uri_id   INT NOT NULL REFERENCES uris (id),
+     bucket   TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     bitmap   BYTEA NOT NULL,
+     CONSTRAINT pk_hits_visitors PRIMARY KEY (app_id, uri_id, bucket)
+     );
+
+ CREATE INDEX IF NOT EXISTS idx_hits_visitors_bucket ON hits_visitors (bucket);
@@ -0,0 +1,99 @@
+package ru.practicum.archive;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.StatsHit;
+import util.IpAddresses;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitArchiveTest {
+
+    static final LocalDateTime START = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    @Test
+    void roundTripAcrossBlocks() throws IOException {
+        List<StatsHit> hits = new ArrayList<>();
+        for (int i = 0; i < HitArchive.BLOCK_SIZE + 1000; i++) {
+            // время идет то вперед, то назад: разность с предыдущей строкой бывает отрицательной
+            LocalDateTime timestamp = START.plusNanos((i % 7 == 0 ? -i : i) * 1_000_000L);
+            String ip = i % 3 == 0 ? "2001:db8:0:0:0:0:0:" + Integer.toHexString(i % 50 + 1) : "10.0." + (i % 256) + ".1";
+            hits.add(new StatsHit(null, "app-" + (i % 2), "/events/" + (i % 5000), ip, timestamp));
+        }
+        hits.add(new StatsHit(null, "ewm", "/события", "::ffff:8.8.8.8", LocalDateTime.of(1969, 12, 31, 23, 59)));
+
+        List<StatsHit> read = readAll(write(hits));
+
+        assertThat(read).hasSize(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            StatsHit expected = hits.get(i);
+            StatsHit actual = read.get(i);
+            assertThat(actual.getApp()).isEqualTo(expected.getApp());
+            assertThat(actual.getUri()).isEqualTo(expected.getUri());
+            assertThat(actual.getIp()).isEqualTo(IpAddresses.normalize(expected.getIp()));
+            assertThat(actual.getTimestamp()).isEqualTo(expected.getTimestamp());
+        }
+    }
+
+    @Test
+    void emptyArchiveHasNoBlocks() throws IOException {
+        HitArchiveReader reader = new HitArchiveReader(new ByteArrayInputStream(write(List.of())));
+
+        assertThat(reader.readBlock()).isNull();
+        assertThat(reader.readBlock()).isNull();
+    }
+
+    @Test
+    void foreignFileIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        assertThatThrownBy(() -> new HitArchiveReader(new ByteArrayInputStream(bytes.toByteArray())))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void truncatedArchiveIsRejected() throws IOException {
+        List<StatsHit> hits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            hits.add(new StatsHit(null, "ewm", "/events/" + i, "10.0.0." + i, START.plusSeconds(i)));
+        }
+        byte[] bytes = write(hits);
+
+        assertThatThrownBy(() -> readAll(Arrays.copyOf(bytes, bytes.length / 2)))
+                .isInstanceOf(IOException.class);
+    }
+
+    static byte[] write(List<StatsHit> hits) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HitArchiveWriter writer = new HitArchiveWriter(out)) {
+            for (StatsHit hit : hits) {
+                writer.write(hit);
+            }
+            assertThat(writer.getWritten()).isEqualTo(hits.size());
+        }
+        return out.toByteArray();
+    }
+
+    static List<StatsHit> readAll(byte[] bytes) throws IOException {
+        HitArchiveReader reader = new HitArchiveReader(new ByteArrayInputStream(bytes));
+        List<StatsHit> hits = new ArrayList<>();
+        List<StatsHit> block;
+        while ((block = reader.readBlock()) != null) {
+            assertThat(block.size()).isLessThanOrEqualTo(HitArchive.BLOCK_SIZE);
+            hits.addAll(block);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,181 @@
+package ru.practicum.buffer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.cache.CacheProperties;
+import ru.practicum.cache.StatsCache;
+import ru.practicum.exception.BufferFullException;
+import ru.practicum.exception.WriteNotConfirmedException;
+import ru.practicum.model.StatsHit;
+import ru.practicum.repository.StatsRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HitBufferTest {
+
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final List<List<StatsHit>> batches = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch release = new CountDownLatch(1);
+    StatsRepository statsRepository;
+    BufferProperties properties;
+    HitBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        statsRepository = mock(StatsRepository.class);
+        when(statsRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<StatsHit> hits = invocation.getArgument(0);
+            batches.add(new ArrayList<>(hits));
+            return hits.size();
+        });
+        properties = new BufferProperties();
+        properties.setFlushInterval(Duration.ofMillis(20));
+        properties.setShutdownTimeout(Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (buffer != null) {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    void flushModeReturnsAfterBatchIsSaved() {
+        start();
+
+        buffer.add(hit(1));
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).extracting(StatsHit::getUri).containsExactly("/events/1");
+    }
+
+    @Test
+    void batchesAreLimitedByFlushSize() {
+        properties.setDurability(DurabilityMode.ENQUEUE);
+        properties.setFlushSize(3);
+        properties.setFlushInterval(Duration.ofMillis(200));
+        start();
+
+        for (int i = 0; i < 10; i++) {
+            buffer.add(hit(i));
+        }
+        buffer.stop();
+
+        assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(3));
+        assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(10);
+    }
+
+    @Test
+    void unconfirmedWriteTimesOut() {
+        blockSaves();
+        start();
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> buffer.add(hit(1)))
+                .isInstanceOf(WriteNotConfirmedException.class);
+        // ожидание ограничено flushInterval + shutdownTimeout
+        assertThat(Duration.ofNanos(System.nanoTime() - started))
+                .isGreaterThanOrEqualTo(Duration.ofMillis(500))
+                .isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void failedBatchIsReportedToWaitingRequest() {
+        doThrow(new IllegalStateException("нет соединения")).when(statsRepository).saveAll(anyList());
+        start();
+
+        assertThatThrownBy(() -> buffer.add(hit(1)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("нет соединения");
+    }
+
+    @Test
+    void failedBatchIsCountedAsDroppedInEnqueueMode() throws InterruptedException {
+        CountDownLatch failed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            failed.countDown();
+            throw new IllegalStateException("нет соединения");
+        }).when(statsRepository).saveAll(anyList());
+        properties.setDurability(DurabilityMode.ENQUEUE);
+        start();
+
+        buffer.add(hit(1));
+        assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+        buffer.stop();
+
+        assertThat(meterRegistry.counter("stats.buffer.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueRejectsHit() throws InterruptedException {
+        CountDownLatch taken = blockSaves();
+        properties.setDurability(DurabilityMode.ENQUEUE);
+        properties.setCapacity(1);
+        start();
+
+        buffer.add(hit(1));
+        assertThat(taken.await(5, TimeUnit.SECONDS)).isTrue();
+        buffer.add(hit(2));
+
+        assertThatThrownBy(() -> buffer.add(hit(3)))
+                .isInstanceOf(BufferFullException.class);
+        assertThat(buffer.size()).isEqualTo(1);
+    }
+
+    @Test
+    void stopWritesQueuedHitsAndRejectsNewOnes() {
+        properties.setDurability(DurabilityMode.ENQUEUE);
+        properties.setFlushInterval(Duration.ofMillis(200));
+        start();
+        for (int i = 0; i < 5; i++) {
+            buffer.add(hit(i));
+        }
+
+        buffer.stop();
+
+        assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(5);
+        assertThat(buffer.size()).isZero();
+        assertThatThrownBy(() -> buffer.add(hit(6)))
+                .isInstanceOf(BufferFullException.class);
+    }
+
+    void start() {
+        buffer = new HitBuffer(properties, statsRepository, new StatsCache(new CacheProperties(), meterRegistry),
+                meterRegistry);
+        buffer.start();
+    }
+
+    // Запись пачки висит до конца теста; возвращаемый latch срабатывает, когда поток буфера взял пачку.
+    CountDownLatch blockSaves() {
+        CountDownLatch taken = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            taken.countDown();
+            release.await();
+            List<StatsHit> hits = invocation.getArgument(0);
+            return hits.size();
+        }).when(statsRepository).saveAll(anyList());
+        return taken;
+    }
+
+    static StatsHit hit(int i) {
+        return new StatsHit(null, "ewm", "/events/" + i, "10.0.0." + i, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,146 @@
+package ru.practicum.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.web.client.MockServerRestTemplateCustomizer;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.UnorderedRequestExpectationManager;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.model.StatsDelta;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.client.ExpectedCount.never;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.queryParam;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static util.Constants.STATS_CURSOR_HEADER;
+
+class ShardedStatsRepositoryTest {
+
+    static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    static final LocalDateTime END = LocalDateTime.of(2024, 2, 1, 0, 0);
+
+    ShardedStatsRepository repository;
+    MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        ShardProperties properties = new ShardProperties();
+        properties.setUrls(List.of("http://shard0", "http://shard1"));
+        properties.setThreads(2);
+        MockServerRestTemplateCustomizer customizer =
+                new MockServerRestTemplateCustomizer(UnorderedRequestExpectationManager.class);
+        repository = new ShardedStatsRepository(properties, new RestTemplateBuilder(customizer));
+        server = customizer.getServer();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void uriAlwaysGoesToSameShard() {
+        for (String uri : List.of("/events/1", "/events/2", "/событие", "", "polygenelubricants")) {
+            assertThat(repository.shardOf(uri))
+                    .isBetween(0, 1)
+                    .isEqualTo(Math.floorMod(uri.hashCode(), 2));
+        }
+        // hashCode этой строки равен Integer.MIN_VALUE: Math.abs дал бы отрицательный номер шарда
+        assertThat("polygenelubricants".hashCode()).isEqualTo(Integer.MIN_VALUE);
+    }
+
+    @Test
+    void partsWithoutUrisCoverAllShards() {
+        assertThat(repository.parts(null))
+                .extracting(ShardedStatsRepository.ShardPart::getShard, ShardedStatsRepository.ShardPart::getUris)
+                .containsExactly(tuple(0, null), tuple(1, null));
+    }
+
+    @Test
+    void partsGroupUrisByShardAndSplitLongLists() {
+        List<String> uris = IntStream.range(0, 3 * ShardedStatsRepository.URIS_PER_REQUEST)
+                .mapToObj(i -> "/events/" + i)
+                .collect(Collectors.toList());
+        List<String> withDuplicates = new ArrayList<>(uris);
+        withDuplicates.addAll(uris.subList(0, 10));
+
+        List<ShardedStatsRepository.ShardPart> parts = repository.parts(withDuplicates);
+
+        assertThat(parts).allSatisfy(part -> {
+            assertThat(part.getUris()).hasSizeLessThanOrEqualTo(ShardedStatsRepository.URIS_PER_REQUEST);
+            assertThat(part.getUris()).allSatisfy(uri -> assertThat(repository.shardOf(uri)).isEqualTo(part.getShard()));
+        });
+        assertThat(parts.stream().flatMap(part -> part.getUris().stream()))
+                .containsExactlyInAnyOrderElementsOf(uris);
+    }
+
+    @Test
+    void firstDeltaRequestsAllShardsAndJoinsCursors() {
+        expectDelta(0, "delta", "true", "[{\"app\":\"ewm\",\"uri\":\"/a\",\"hits\":2}]", "17");
+        expectDelta(1, "delta", "true", "[{\"app\":\"ewm\",\"uri\":\"/b\",\"hits\":5}]", "4294967299");
+
+        StatsDelta delta = repository.findStatsDelta(START, END, null, null);
+
+        server.verify();
+        assertThat(delta.getPosition()).isEqualTo("17,4294967299");
+        assertThat(delta.getStats()).extracting("uri").containsExactly("/b", "/a");
+    }
+
+    @Test
+    void emptyPositionMeansShardWasNotPolledYet() {
+        expectDelta(0, "since", "17", "[]", "20");
+        expectDelta(1, "delta", "true", "[]", "3");
+
+        StatsDelta delta = repository.findStatsDelta(START, END, null, "17,");
+
+        server.verify();
+        assertThat(delta.getPosition()).isEqualTo("20,3");
+    }
+
+    @Test
+    void shardsOutsideUrisKeepTheirPositions() {
+        String uri = IntStream.range(0, 100)
+                .mapToObj(i -> "/events/" + i)
+                .filter(candidate -> repository.shardOf(candidate) == 1)
+                .findFirst()
+                .orElseThrow();
+        expectDelta(1, "since", "8", "[{\"app\":\"ewm\",\"uri\":\"" + uri + "\",\"hits\":1}]", "9");
+        server.expect(never(), requestTo(startsWith("http://shard0")));
+
+        StatsDelta delta = repository.findStatsDelta(START, END, List.of(uri), "5,8");
+
+        server.verify();
+        assertThat(delta.getPosition()).isEqualTo("5,9");
+        assertThat(delta.getStats()).extracting("hits").containsExactly(1L);
+    }
+
+    @Test
+    void cursorOfOtherTopologyIsRejected() {
+        assertThatThrownBy(() -> repository.findStatsDelta(START, END, null, "1,2,3"))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> repository.findStatsDelta(START, END, null, "1"))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    void expectDelta(int shard, String param, String value, String body, String cursor) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(STATS_CURSOR_HEADER, cursor);
+        server.expect(requestTo(startsWith("http://shard" + shard + "/stats?")))
+                .andExpect(queryParam(param, value))
+                .andRespond(withSuccess(body, MediaType.APPLICATION_JSON).headers(headers));
+    }
+}
@@ -0,0 +1,116 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+class HyperLogLogTest {
+
+    @Test
+    void emptySketchEstimatesZero() {
+        assertThat(new HyperLogLog(12).estimate()).isZero();
+    }
+
+    @Test
+    void smallSetsAreNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog(14);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("10.0.0." + i);
+            sketch.add("10.0.0." + i);
+        }
+
+        assertThat(sketch.estimate()).isBetween(98L, 102L);
+    }
+
+    @Test
+    void estimateStaysWithinStandardError() {
+        // p = 12: стандартная ошибка около 1.6%, допуск - три ошибки
+        HyperLogLog sketch = new HyperLogLog(12);
+        int count = 200_000;
+        for (int i = 0; i < count; i++) {
+            sketch.add("192.168." + (i >>> 8 & 0xFF) + "." + (i & 0xFF) + "/" + (i >>> 16));
+        }
+
+        assertThat((double) sketch.estimate()).isCloseTo(count, withPercentage(5));
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog(11);
+        HyperLogLog right = new HyperLogLog(11);
+        HyperLogLog union = new HyperLogLog(11);
+        for (int i = 0; i < 30_000; i++) {
+            left.add("ip-" + i);
+            union.add("ip-" + i);
+        }
+        for (int i = 20_000; i < 50_000; i++) {
+            right.add("ip-" + i);
+            union.add("ip-" + i);
+        }
+
+        left.merge(right);
+
+        assertThat(left.toBytes()).isEqualTo(union.toBytes());
+        assertThat(left.estimate()).isEqualTo(union.estimate());
+    }
+
+    @Test
+    void mergeIsIdempotent() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (int i = 0; i < 5_000; i++) {
+            sketch.add("ip-" + i);
+        }
+        long estimate = sketch.estimate();
+
+        sketch.merge(HyperLogLog.fromBytes(sketch.toBytes()));
+
+        assertThat(sketch.estimate()).isEqualTo(estimate);
+    }
+
+    @Test
+    void mergeOfDifferentPrecisionIsRejected() {
+        assertThatThrownBy(() -> new HyperLogLog(10).merge(new HyperLogLog(11)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void smallSketchIsSerializedSparse() {
+        HyperLogLog sketch = new HyperLogLog(14);
+        for (int i = 0; i < 10; i++) {
+            sketch.add("ip-" + i);
+        }
+
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes[1]).isEqualTo(HyperLogLog.SPARSE);
+        assertThat(bytes.length).isLessThan(4 + 10 * 3 + 1);
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertThat(restored.getPrecision()).isEqualTo(14);
+        assertThat(restored.estimate()).isEqualTo(sketch.estimate());
+        assertThat(restored.toBytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    void largeSketchIsSerializedDense() {
+        HyperLogLog sketch = new HyperLogLog(8);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add("ip-" + i);
+        }
+
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes[1]).isEqualTo(HyperLogLog.DENSE);
+        assertThat(bytes).hasSize(2 + 256);
+        assertThat(HyperLogLog.fromBytes(bytes).estimate()).isEqualTo(sketch.estimate());
+    }
+
+    @Test
+    void precisionOutOfRangeIsRejected() {
+        assertThatThrownBy(() -> new HyperLogLog(HyperLogLog.MIN_PRECISION - 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,179 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SpaceSavingTest {
+
+    @Test
+    void belowCapacityCountsAreExact() {
+        SpaceSaving summary = new SpaceSaving(10);
+        summary.add(1, 5);
+        summary.add(2, 1);
+        summary.add(1, 2);
+        summary.add(3, 4);
+
+        assertThat(summary.isFull()).isFalse();
+        assertThat(summary.top(10))
+                .extracting(SpaceSaving.Counter::getItem, SpaceSaving.Counter::getCount, SpaceSaving.Counter::getError)
+                .containsExactly(
+                        tuple(1, 7L, 0L),
+                        tuple(3, 4L, 0L),
+                        tuple(2, 1L, 0L));
+    }
+
+    @Test
+    void newItemEvictsMinimumAndInheritsItsCount() {
+        SpaceSaving summary = new SpaceSaving(3);
+        summary.add(1, 10);
+        summary.add(2, 3);
+        summary.add(3, 7);
+
+        summary.add(4, 1);
+
+        Map<Integer, SpaceSaving.Counter> counters = byItem(summary);
+        assertThat(counters).containsOnlyKeys(1, 3, 4);
+        assertThat(counters.get(4).getCount()).isEqualTo(4);
+        assertThat(counters.get(4).getError()).isEqualTo(3);
+    }
+
+    @Test
+    void incrementMovesCounterOutOfMinimum() {
+        SpaceSaving summary = new SpaceSaving(3);
+        summary.add(1, 1);
+        summary.add(2, 2);
+        summary.add(3, 3);
+        summary.add(1, 10);
+
+        summary.add(4, 1);
+
+        // минимальным после прибавки стал счетчик 2, а не 1
+        assertThat(byItem(summary)).containsOnlyKeys(1, 3, 4);
+    }
+
+    @Test
+    void zipfStreamKeepsErrorBoundsAndHeavyHitters() {
+        int capacity = 50;
+        SpaceSaving summary = new SpaceSaving(capacity);
+        Map<Integer, Long> exact = new HashMap<>();
+        long total = feedZipf(summary, exact, new Random(42), 100_000, 2_000);
+
+        assertThat(summary.isFull()).isTrue();
+        assertBounds(summary, exact, total);
+    }
+
+    @Test
+    void mergeKeepsErrorBoundsOfCombinedStream() {
+        int capacity = 40;
+        SpaceSaving left = new SpaceSaving(capacity);
+        SpaceSaving right = new SpaceSaving(capacity);
+        Map<Integer, Long> exact = new HashMap<>();
+        long total = feedZipf(left, exact, new Random(1), 50_000, 1_000)
+                + feedZipf(right, exact, new Random(2), 50_000, 1_000);
+
+        left.merge(right);
+
+        assertThat(left.top(Integer.MAX_VALUE)).hasSize(capacity);
+        assertBounds(left, exact, total);
+        // после merge куча должна остаться корректной: вытесняется минимальный счетчик
+        long min = left.top(Integer.MAX_VALUE).stream().mapToLong(SpaceSaving.Counter::getCount).min().orElseThrow();
+        left.add(-1, 1);
+        assertThat(byItem(left).get(-1).getError()).isEqualTo(min);
+    }
+
+    @Test
+    void mergeOfPartialSummariesIsExact() {
+        SpaceSaving left = new SpaceSaving(10);
+        SpaceSaving right = new SpaceSaving(10);
+        left.add(1, 3);
+        left.add(2, 1);
+        right.add(1, 2);
+        right.add(3, 5);
+
+        left.merge(right);
+
+        Map<Integer, SpaceSaving.Counter> counters = byItem(left);
+        assertThat(counters).containsOnlyKeys(1, 2, 3);
+        assertThat(counters.get(1).getCount()).isEqualTo(5);
+        assertThat(counters.get(3).getCount()).isEqualTo(5);
+        assertThat(counters.values()).allSatisfy(counter -> assertThat(counter.getError()).isZero());
+    }
+
+    @Test
+    void serializationRoundTrip() {
+        SpaceSaving summary = new SpaceSaving(20);
+        feedZipf(summary, new HashMap<>(), new Random(7), 10_000, 500);
+
+        SpaceSaving restored = SpaceSaving.fromBytes(summary.toBytes());
+
+        assertThat(restored.getCapacity()).isEqualTo(20);
+        assertThat(restored.top(20)).usingRecursiveFieldByFieldElementComparatorIgnoringFields("index")
+                .containsExactlyInAnyOrderElementsOf(summary.top(20));
+        // восстановленная сводка продолжает вытеснять минимум
+        long min = restored.top(20).stream().mapToLong(SpaceSaving.Counter::getCount).min().orElseThrow();
+        restored.add(-1, 1);
+        assertThat(byItem(restored).get(-1).getCount()).isEqualTo(min + 1);
+    }
+
+    @Test
+    void corruptedSizeIsRejected() {
+        byte[] bytes = new SpaceSaving(2).toBytes();
+        bytes[7] = 3;
+
+        assertThatThrownBy(() -> SpaceSaving.fromBytes(bytes))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void nonPositiveCapacityIsRejected() {
+        assertThatThrownBy(() -> new SpaceSaving(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static long feedZipf(SpaceSaving summary, Map<Integer, Long> exact, Random random, int events, int items) {
+        double[] cumulative = new double[items];
+        double sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < events; i++) {
+            double point = random.nextDouble() * sum;
+            int item = 0;
+            while (cumulative[item] < point) {
+                item++;
+            }
+            summary.add(item, 1);
+            exact.merge(item, 1L, Long::sum);
+        }
+        return events;
+    }
+
+    static void assertBounds(SpaceSaving summary, Map<Integer, Long> exact, long total) {
+        Map<Integer, SpaceSaving.Counter> counters = byItem(summary);
+        counters.values().forEach(counter -> {
+            long actual = exact.getOrDefault(counter.getItem(), 0L);
+            assertThat(counter.getCount()).isGreaterThanOrEqualTo(actual);
+            assertThat(counter.getCount() - counter.getError()).isLessThanOrEqualTo(actual);
+        });
+        exact.forEach((item, count) -> {
+            if (count > total / summary.getCapacity()) {
+                assertThat(counters).containsKey(item);
+            }
+        });
+    }
+
+    static Map<Integer, SpaceSaving.Counter> byItem(SpaceSaving summary) {
+        List<SpaceSaving.Counter> counters = summary.top(Integer.MAX_VALUE);
+        return counters.stream().collect(Collectors.toMap(SpaceSaving.Counter::getItem, counter -> counter));
+    }
+}
@@ -0,0 +1,57 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IpAddressesTest {
+
+    @Test
+    void ipv4AndMappedIpv6AreSameAddress() {
+        byte[] plain = IpAddresses.toBytes("192.168.0.1");
+
+        assertThat(plain).hasSize(IpAddresses.LENGTH);
+        assertThat(IpAddresses.toBytes("::ffff:192.168.0.1")).isEqualTo(plain);
+        assertThat(IpAddresses.toBytes("::ffff:c0a8:1")).isEqualTo(plain);
+        assertThat(IpAddresses.toBytes("0:0:0:0:0:ffff:c0a8:0001")).isEqualTo(plain);
+    }
+
+    @Test
+    void normalizeGivesOneFormPerVisitor() {
+        assertThat(IpAddresses.normalize("::ffff:192.168.0.1")).isEqualTo("192.168.0.1");
+        assertThat(IpAddresses.normalize("::FFFF:C0A8:1")).isEqualTo("192.168.0.1");
+        assertThat(IpAddresses.normalize("10.0.0.255")).isEqualTo("10.0.0.255");
+        assertThat(IpAddresses.normalize("2001:DB8::1")).isEqualTo(IpAddresses.normalize("2001:db8:0:0:0:0:0:1"));
+        assertThat(IpAddresses.normalize("::1")).isEqualTo(IpAddresses.normalize("0:0:0:0:0:0:0:1"));
+    }
+
+    @Test
+    void normalizeIsIdempotent() {
+        for (String ip : new String[]{"8.8.8.8", "::ffff:8.8.8.8", "2001:db8::8:800:200c:417a", "::"}) {
+            String normalized = IpAddresses.normalize(ip);
+            assertThat(IpAddresses.normalize(normalized)).isEqualTo(normalized);
+        }
+    }
+
+    @Test
+    void toStringRestoresIpv6() {
+        byte[] bytes = IpAddresses.toBytes("2001:db8::1");
+
+        assertThat(bytes[0]).isEqualTo((byte) 0x20);
+        assertThat(bytes[15]).isEqualTo((byte) 1);
+        assertThat(IpAddresses.toBytes(IpAddresses.toString(bytes))).isEqualTo(bytes);
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"256.0.0.1", "1.2.3", "1.2.3.4.5", "1..2.3", "1.2.3.-4", "01234.1.1.1", "localhost",
+            "example.com", "fe80::1%1", "fe80::1%eth0", "1:2:3:4:5:6:7:8:9", "::g", " 1.2.3.4"})
+    void invalidAddressesAreRejected(String ip) {
+        assertThatThrownBy(() -> IpAddresses.toBytes(ip))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}